@@ -1,19 +1,25 @@
 package com.springboot.oauth;
 
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import com.springboot.oauth.event.AuditoriaAutenticacion;
+import com.springboot.oauth.metrics.MetricasCaches;
+import com.springboot.oauth.service.IntentosLoginTracker;
+import com.springboot.oauth.service.TokensRevocados;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
 import org.springframework.cloud.openfeign.EnableFeignClients;
+import org.springframework.context.annotation.Bean;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 @EnableFeignClients
 @EnableEurekaClient
-@EntityScan({"com.springboot.commons.usuarios.entity"})
 @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class})
 @SpringBootApplication
 public class MicroservicioOauthApplication implements CommandLineRunner{
@@ -21,12 +27,33 @@ public class MicroservicioOauthApplication implements CommandLineRunner{
 	@Autowired
 	private BCryptPasswordEncoder passwordEncoder;
 
+	/**
+	 * Imprime al iniciar passwords de ejemplo encriptados con BCrypt, cada uno cuesta el
+	 * tiempo de un login por ello ya no se realiza en cada arranque
+	 */
+	@Value("${security.bcrypt.imprimir-ejemplos:false}")
+	private boolean imprimirEjemplos;
+
 	public static void main(String[] args) {
 		SpringApplication.run(MicroservicioOauthApplication.class, args);
 	}
 
+	/**
+	 * Con spring.main.lazy-initialization=true (perfil lean) estos beans se crean al iniciar,
+	 * inician hilos, restauran el snapshot de revocaciones o registran métricas y ninguna
+	 * petición los solicita antes de que se necesiten
+	 */
+	@Bean
+	public static LazyInitializationExcludeFilter beansSinInicializacionDiferida() {
+		return LazyInitializationExcludeFilter.forBeanTypes(MetricasCaches.class, TokensRevocados.class,
+				AuditoriaAutenticacion.class, ClusterInvalidaciones.class, IntentosLoginTracker.class);
+	}
+
 	@Override
 	public void run(String... args) throws Exception {
+		if (!imprimirEjemplos) {
+			return;
+		}
 		String password = "12345";
 
 		for(int a=0; a<4; a++){
@@ -0,0 +1,94 @@
+package com.springboot.oauth.client;
+
+import feign.FeignException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class CircuitoAdministradorConfig {
+
+    public static final String CIRCUITO = "microservicio-administrador";
+
+    /**
+     * Configuración del circuit breaker de las búsquedas de usuarios en el microservicio-administrador
+     * (ver UsuarioService.findByUsername), si el microservicio-administrador está lento o caído el
+     * circuito se abre y las búsquedas fallan de inmediato en lugar de ocupar los hilos de las
+     * peticiones de login esperando el timeout.
+     *
+     * Cada llamada se ejecuta en un pool de hilos propio con un número máximo de hilos, al llenarse
+     * la llamada se rechaza y cuenta como fallo, y el time limiter corta las llamadas que tardan más
+     * de usuarios.circuito.timeout-ms aunque el read-timeout de Feign sea mayor.
+     *
+     * Un 404 (usuario no encontrado) es una respuesta válida y no cuenta como fallo
+     *
+     * usuarios.circuito.tasa-fallos = porcentaje de fallos para abrir el circuito
+     * usuarios.circuito.ventana = número de llamadas que se evalúan
+     * usuarios.circuito.llamadas-minimas = llamadas mínimas antes de calcular la tasa de fallos
+     * usuarios.circuito.abierto-segundos = tiempo que el circuito permanece abierto
+     * usuarios.circuito.timeout-ms = tiempo máximo de cada llamada
+     * usuarios.circuito.hilos = número máximo de llamadas simultáneas
+     */
+    @Value("${usuarios.circuito.tasa-fallos:50}")
+    private float tasaFallos;
+
+    @Value("${usuarios.circuito.ventana:20}")
+    private int ventana;
+
+    @Value("${usuarios.circuito.llamadas-minimas:10}")
+    private int llamadasMinimas;
+
+    @Value("${usuarios.circuito.abierto-segundos:10}")
+    private long abiertoSegundos;
+
+    @Value("${usuarios.circuito.timeout-ms:3000}")
+    private long timeoutMs;
+
+    @Value("${usuarios.circuito.hilos:32}")
+    private int hilos;
+
+    @Bean
+    public Customizer<Resilience4JCircuitBreakerFactory> circuitoAdministrador() {
+        return factory -> {
+            factory.configure(builder -> builder
+                    .circuitBreakerConfig(CircuitBreakerConfig.custom()
+                            .failureRateThreshold(tasaFallos)
+                            .slidingWindowSize(ventana)
+                            .minimumNumberOfCalls(llamadasMinimas)
+                            .waitDurationInOpenState(Duration.ofSeconds(abiertoSegundos))
+                            .ignoreExceptions(FeignException.NotFound.class)
+                            .build())
+                    .timeLimiterConfig(TimeLimiterConfig.custom()
+                            .timeoutDuration(Duration.ofMillis(timeoutMs))
+                            .cancelRunningFuture(true)
+                            .build()), CIRCUITO);
+            factory.configureExecutorService(pool());
+        };
+    }
+
+    public long getAbiertoSegundos() {
+        return abiertoSegundos;
+    }
+
+    private ThreadPoolExecutor pool() {
+        AtomicInteger numero = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread hilo = new Thread(runnable, "administrador-" + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,343 @@
+package com.springboot.oauth.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+@Component
+public class ClusterInvalidaciones {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterInvalidaciones.class);
+
+    public static final String RUTA = "/cluster/invalidaciones";
+
+    public static final String HEADER_SECRETO = "X-Cluster-Secreto";
+
+    public static final String HEADER_NODO = "X-Cluster-Nodo";
+
+    private static final Set<MensajeCluster.Tipo> PRIORITARIOS = EnumSet.of(
+            MensajeCluster.Tipo.USUARIO_DESHABILITADO,
+            MensajeCluster.Tipo.USUARIOS_INVALIDADOS,
+            MensajeCluster.Tipo.JTI_REVOCADO,
+            MensajeCluster.Tipo.USUARIO_REVOCADO);
+
+    /**
+     * Canal de invalidaciones entre las instancias del microservicio-oauth, cada instancia guarda
+     * en memoria los usuarios (UsuarioCache), los intentos fallidos (IntentosLoginTracker), los
+     * usuarios modificados y las revocaciones (TokensRevocados), sin este canal un cambio en una
+     * instancia no se veía en las demás hasta que vencía su cache.
+     *
+     * Los cambios de origen local se agregan a una cola y un hilo los envía cada cluster.lote-ms
+     * en un solo POST a /cluster/invalidaciones de cada instancia, ClusterController los aplica
+     * en la instancia que los recibe sin reenviarlos.
+     *
+     * Las revocaciones, los usuarios deshabilitados y la invalidación de toda la cache van en
+     * una cola prioritaria sin límite que se envía antes que la cola normal y nunca se descarta,
+     * son mensajes poco frecuentes y perder uno dejaría un token revocado válido en otra
+     * instancia. La cola normal (usuarios actualizados e intentos) tiene el límite de
+     * cluster.cola-maxima porque un ataque de fuerza bruta la puede llenar, y al armar cada lote
+     * los INTENTOS de un mismo username se suman en un solo mensaje.
+     *
+     * Las instancias se toman de cluster.peers si se asigna (por ejemplo para levantar varias
+     * instancias en la misma máquina sin Eureka), si no se toman de Eureka con el nombre
+     * cluster.servicio, cada mensaje lleva el id de la instancia que lo envía para ignorar los
+     * mensajes propios que regresan por el registro.
+     *
+     * cluster.secreto = secreto compartido por las instancias, se envía en el header
+     * X-Cluster-Secreto, si no se asigna el canal queda deshabilitado
+     * cluster.peers = urls de las demás instancias separadas por comas
+     * cluster.servicio = nombre de las instancias en Eureka
+     * cluster.lote-ms = tiempo que se agrupan los mensajes antes de enviarlos
+     * cluster.lote-maximo = número máximo de mensajes de cada POST
+     * cluster.cola-maxima = número máximo de mensajes en espera de la cola normal, los que no
+     * caben se descartan
+     * cluster.timeout-ms = timeout de conexión y de lectura de cada POST
+     *
+     * NOTA: es un canal de mejor esfuerzo, un mensaje que no se puede entregar no se reintenta,
+     * la cache de la otra instancia se corrige al vencer su ttl como sucedía antes
+     */
+    private final Queue<MensajeCluster> cola = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger enCola = new AtomicInteger();
+
+    private final Queue<MensajeCluster> colaPrioritaria = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger enColaPrioritaria = new AtomicInteger();
+
+    private final String nodo = UUID.randomUUID().toString();
+
+    private final LongAdder enviados = new LongAdder();
+
+    private final LongAdder recibidos = new LongAdder();
+
+    private final LongAdder descartados = new LongAdder();
+
+    private final LongAdder fallidos = new LongAdder();
+
+    private final ScheduledExecutorService envio;
+
+    private final byte[] secreto;
+
+    private final List<String> peers;
+
+    @Autowired
+    private DiscoveryClient discoveryClient;
+
+    @Autowired
+    private RestTemplateBuilder restTemplateBuilder;
+
+    private RestTemplate restTemplate;
+
+    @Value("${cluster.servicio:${spring.application.name}}")
+    private String servicio;
+
+    @Value("${cluster.lote-ms:100}")
+    private long loteMs;
+
+    @Value("${cluster.lote-maximo:500}")
+    private int loteMaximo;
+
+    @Value("${cluster.cola-maxima:10000}")
+    private int colaMaxima;
+
+    @Value("${cluster.timeout-ms:1000}")
+    private long timeoutMs;
+
+    public ClusterInvalidaciones(@Value("${cluster.secreto:}") String secreto,
+                                 @Value("${cluster.peers:}") String peers) {
+        this.secreto = secreto.getBytes(StandardCharsets.UTF_8);
+        this.peers = Arrays.stream(peers.split(","))
+                .map(String::trim)
+                .filter(peer -> !peer.isEmpty())
+                .map(peer -> peer.endsWith("/") ? peer.substring(0, peer.length() - 1) : peer)
+                .collect(Collectors.toList());
+        this.envio = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread hilo = new Thread(runnable, "cluster-invalidaciones");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!isHabilitado()) {
+            log.info("Canal de invalidaciones del cluster deshabilitado, no se asignó cluster.secreto");
+            return;
+        }
+        restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(timeoutMs))
+                .setReadTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+        envio.scheduleWithFixedDelay(this::enviar, loteMs, loteMs, TimeUnit.MILLISECONDS);
+        log.info("Canal de invalidaciones del cluster habilitado, nodo {}, peers {}", nodo,
+                peers.isEmpty() ? "de Eureka " + servicio : peers);
+    }
+
+    public boolean isHabilitado() {
+        return secreto.length > 0;
+    }
+
+    public void usuarioActualizado(String username) {
+        publicar(new MensajeCluster(MensajeCluster.Tipo.USUARIO_ACTUALIZADO, username, null, 0));
+    }
+
+    public void usuarioDeshabilitado(String username) {
+        publicar(new MensajeCluster(MensajeCluster.Tipo.USUARIO_DESHABILITADO, username, null, 0));
+    }
+
+    public void usuariosInvalidados() {
+        publicar(new MensajeCluster(MensajeCluster.Tipo.USUARIOS_INVALIDADOS, null, null, 0));
+    }
+
+    public void jtiRevocado(String jti, long exp) {
+        publicar(new MensajeCluster(MensajeCluster.Tipo.JTI_REVOCADO, null, jti, exp));
+    }
+
+    public void usuarioRevocado(String username, long revocadoEn) {
+        publicar(new MensajeCluster(MensajeCluster.Tipo.USUARIO_REVOCADO, username, null, revocadoEn));
+    }
+
+    public void intentoFallido(String username) {
+        publicar(new MensajeCluster(MensajeCluster.Tipo.INTENTOS, username, null, 1));
+    }
+
+    public void intentosReiniciados(String username) {
+        publicar(new MensajeCluster(MensajeCluster.Tipo.INTENTOS_REINICIO, username, null, 0));
+    }
+
+    private void publicar(MensajeCluster mensaje) {
+        if (!isHabilitado()) {
+            return;
+        }
+        if (PRIORITARIOS.contains(mensaje.getTipo())) {
+            enColaPrioritaria.incrementAndGet();
+            colaPrioritaria.offer(mensaje);
+            return;
+        }
+        if (enCola.incrementAndGet() > colaMaxima) {
+            enCola.decrementAndGet();
+            descartados.increment();
+            return;
+        }
+        cola.offer(mensaje);
+    }
+
+    /**
+     * Valida el secreto de un lote recibido, se compara en tiempo constante para no revelar
+     * el secreto por el tiempo de respuesta
+     */
+    public boolean esSecretoValido(String recibido) {
+        return isHabilitado() && recibido != null
+                && MessageDigest.isEqual(secreto, recibido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean esNodoPropio(String nodoRecibido) {
+        return nodo.equals(nodoRecibido);
+    }
+
+    public void recibidos(int mensajes) {
+        recibidos.add(mensajes);
+    }
+
+    void enviar() {
+        try {
+            while (getPendientes() > 0) {
+                List<MensajeCluster> lote = lote();
+                if (lote.isEmpty()) {
+                    return;
+                }
+                enviar(lote);
+            }
+        } catch (RuntimeException e) {
+            log.error("No se pudo enviar el lote de invalidaciones del cluster", e);
+        }
+    }
+
+    /**
+     * Arma un lote de hasta cluster.lote-maximo mensajes tomando primero la cola prioritaria,
+     * los INTENTOS de un username se suman en el primer INTENTOS del lote, un INTENTOS_REINICIO
+     * cierra la suma para que los intentos posteriores al reinicio se envíen después de él
+     */
+    private List<MensajeCluster> lote() {
+        List<MensajeCluster> lote = new ArrayList<>(Math.min(getPendientes(), loteMaximo));
+        MensajeCluster mensaje;
+        while (lote.size() < loteMaximo && (mensaje = colaPrioritaria.poll()) != null) {
+            enColaPrioritaria.decrementAndGet();
+            lote.add(mensaje);
+        }
+        Map<String, MensajeCluster> intentos = new HashMap<>();
+        while (lote.size() < loteMaximo && (mensaje = cola.poll()) != null) {
+            enCola.decrementAndGet();
+            if (mensaje.getTipo() == MensajeCluster.Tipo.INTENTOS) {
+                MensajeCluster anterior = intentos.putIfAbsent(mensaje.getUsername(), mensaje);
+                if (anterior != null) {
+                    anterior.setValor(anterior.getValor() + mensaje.getValor());
+                    continue;
+                }
+            } else if (mensaje.getTipo() == MensajeCluster.Tipo.INTENTOS_REINICIO) {
+                intentos.remove(mensaje.getUsername());
+            }
+            lote.add(mensaje);
+        }
+        return lote;
+    }
+
+    private void enviar(List<MensajeCluster> lote) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(HEADER_SECRETO, new String(secreto, StandardCharsets.UTF_8));
+        headers.set(HEADER_NODO, nodo);
+        HttpEntity<List<MensajeCluster>> peticion = new HttpEntity<>(lote, headers);
+        for (String peer : peers()) {
+            try {
+                restTemplate.postForEntity(peer + RUTA, peticion, Void.class);
+                enviados.add(lote.size());
+            } catch (RestClientException e) {
+                fallidos.add(lote.size());
+                log.warn("No se pudieron enviar {} invalidaciones a {}: {}", lote.size(), peer, e.getMessage());
+            }
+        }
+    }
+
+    private List<String> peers() {
+        if (!peers.isEmpty()) {
+            return peers;
+        }
+        List<ServiceInstance> instancias = discoveryClient.getInstances(servicio);
+        if (instancias.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return instancias.stream()
+                .map(instancia -> instancia.getUri().toString())
+                .collect(Collectors.toList());
+    }
+
+    public String getNodo() {
+        return nodo;
+    }
+
+    public long getEnviados() {
+        return enviados.sum();
+    }
+
+    public long getRecibidos() {
+        return recibidos.sum();
+    }
+
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    public long getFallidos() {
+        return fallidos.sum();
+    }
+
+    public int getPendientes() {
+        return enCola.get() + enColaPrioritaria.get();
+    }
+
+    /**
+     * Al detener la aplicación se envían los mensajes que quedan en la cola
+     */
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        envio.shutdown();
+        envio.awaitTermination(5, TimeUnit.SECONDS);
+        if (isHabilitado()) {
+            enviar();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.springboot.oauth.cluster;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+public class MensajeCluster {
+
+    /**
+     * Mensaje que una instancia envía a las demás cuando cambia su estado local, los nombres
+     * de las propiedades son de una letra para que los lotes sean compactos:
+     *
+     * t = tipo del mensaje
+     * u = username
+     * j = jti del token revocado
+     * v = exp del token en JTI_REVOCADO, hora de la revocación en USUARIO_REVOCADO (segundos epoch)
+     * o número de intentos fallidos que se suman en INTENTOS
+     */
+    public enum Tipo {
+        USUARIO_ACTUALIZADO,
+        USUARIO_DESHABILITADO,
+        USUARIOS_INVALIDADOS,
+        JTI_REVOCADO,
+        USUARIO_REVOCADO,
+        INTENTOS,
+        INTENTOS_REINICIO
+    }
+
+    @JsonProperty("t")
+    private Tipo tipo;
+
+    @JsonProperty("u")
+    private String username;
+
+    @JsonProperty("j")
+    private String jti;
+
+    @JsonProperty("v")
+    private long valor;
+
+    public MensajeCluster() {
+    }
+
+    public MensajeCluster(Tipo tipo, String username, String jti, long valor) {
+        this.tipo = tipo;
+        this.username = username;
+        this.jti = jti;
+        this.valor = valor;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(Tipo tipo) {
+        this.tipo = tipo;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
+    public long getValor() {
+        return valor;
+    }
+
+    public void setValor(long valor) {
+        this.valor = valor;
+    }
+}
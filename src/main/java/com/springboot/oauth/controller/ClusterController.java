@@ -0,0 +1,108 @@
+package com.springboot.oauth.controller;
+
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import com.springboot.oauth.cluster.MensajeCluster;
+import com.springboot.oauth.service.IntentosLoginTracker;
+import com.springboot.oauth.service.TokensRevocados;
+import com.springboot.oauth.service.UsuarioCache;
+import com.springboot.oauth.service.UsuariosInexistentesCache;
+import com.springboot.oauth.service.UsuariosModificados;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+public class ClusterController {
+
+    /**
+     * EndPoint que recibe los lotes de ClusterInvalidaciones de las demás instancias y los aplica
+     * en las caches locales sin reenviarlos, solo se aceptan lotes con el secreto del cluster
+     * en el header X-Cluster-Secreto, los lotes de la misma instancia se ignoran
+     *
+     * NOTA: ClusterSecurityConfig deja pasar /cluster/** sin autenticación ni CSRF, la validación
+     * se realiza aquí con el secreto
+     */
+    @Autowired
+    private ClusterInvalidaciones cluster;
+
+    @Autowired
+    private UsuarioCache usuarioCache;
+
+    @Autowired
+    private UsuariosInexistentesCache usuariosInexistentes;
+
+    @Autowired
+    private UsuariosModificados usuariosModificados;
+
+    @Autowired
+    private IntentosLoginTracker intentosLoginTracker;
+
+    @Autowired
+    private TokensRevocados tokensRevocados;
+
+    @PostMapping(ClusterInvalidaciones.RUTA)
+    public ResponseEntity<Void> recibir(@RequestHeader(value = ClusterInvalidaciones.HEADER_SECRETO, required = false) String secreto,
+                                        @RequestHeader(value = ClusterInvalidaciones.HEADER_NODO, required = false) String nodo,
+                                        @RequestBody List<MensajeCluster> mensajes) {
+        if (!cluster.esSecretoValido(secreto)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (cluster.esNodoPropio(nodo)) {
+            return ResponseEntity.noContent().build();
+        }
+        for (MensajeCluster mensaje : mensajes) {
+            aplicar(mensaje);
+        }
+        cluster.recibidos(mensajes.size());
+        return ResponseEntity.noContent().build();
+    }
+
+    private void aplicar(MensajeCluster mensaje) {
+        if (mensaje.getTipo() == null) {
+            return;
+        }
+        String username = mensaje.getUsername();
+        switch (mensaje.getTipo()) {
+            case USUARIO_ACTUALIZADO:
+                invalidar(username);
+                break;
+            case USUARIO_DESHABILITADO:
+                invalidar(username);
+                intentosLoginTracker.aplicarBloqueo(username);
+                break;
+            case USUARIOS_INVALIDADOS:
+                usuarioCache.invalidarTodos();
+                usuariosInexistentes.invalidarTodos();
+                usuariosModificados.marcarTodos();
+                intentosLoginTracker.olvidarTodos();
+                break;
+            case JTI_REVOCADO:
+                tokensRevocados.aplicarJti(mensaje.getJti(), mensaje.getValor());
+                break;
+            case USUARIO_REVOCADO:
+                tokensRevocados.aplicarUsuario(username, mensaje.getValor());
+                usuariosModificados.marcar(username);
+                break;
+            case INTENTOS:
+                intentosLoginTracker.aplicarIntentos(username, (int) mensaje.getValor());
+                break;
+            case INTENTOS_REINICIO:
+                intentosLoginTracker.aplicarReinicio(username);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void invalidar(String username) {
+        usuarioCache.invalidar(username);
+        usuariosInexistentes.invalidar(username);
+        usuariosModificados.marcar(username);
+    }
+}
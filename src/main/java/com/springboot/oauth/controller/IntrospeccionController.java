@@ -0,0 +1,61 @@
+package com.springboot.oauth.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.endpoint.CheckTokenEndpoint;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class IntrospeccionController {
+
+    private static final Map<String, ?> INACTIVO = Collections.singletonMap("active", false);
+
+    /**
+     * EndPoint de introspección por lotes, recibe una lista de tokens y regresa en el mismo orden
+     * la misma respuesta que /oauth/check_token para cada token, los tokens inválidos o expirados
+     * se responden con {"active": false} en lugar de un error, de esta forma los gateways pueden
+     * validar muchos tokens en una sola petición. Un elemento null o vacío de la lista también
+     * se responde con {"active": false} sin consultar a CheckTokenEndpoint.
+     *
+     * La aplicación cliente se autentica con HTTP Basic igual que en /oauth/check_token,
+     * ver IntrospeccionSecurityConfig
+     *
+     * authorization.introspeccion.maximo-lote = número máximo de tokens por petición
+     */
+    @Autowired
+    private CheckTokenEndpoint checkTokenEndpoint;
+
+    @Value("${authorization.introspeccion.maximo-lote:100}")
+    private int maximoLote;
+
+    @PostMapping("/oauth/introspeccion")
+    public ResponseEntity<List<Map<String, ?>>> introspeccion(@RequestBody List<String> tokens) {
+        if (tokens.size() > maximoLote) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        List<Map<String, ?>> resultados = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            if (!StringUtils.hasText(token)) {
+                resultados.add(INACTIVO);
+                continue;
+            }
+            try {
+                resultados.add(checkTokenEndpoint.checkToken(token));
+            } catch (InvalidTokenException e) {
+                resultados.add(INACTIVO);
+            }
+        }
+        return ResponseEntity.ok(resultados);
+    }
+}
@@ -0,0 +1,62 @@
+package com.springboot.oauth.controller;
+
+import com.springboot.oauth.security.LlavesJwt;
+import com.springboot.oauth.security.LlavesJwtProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RestController
+public class JwksController {
+
+    /**
+     * EndPoint público con las llaves RSA vigentes en formato JWKS (RFC 7517), los servidores
+     * de recursos lo guardan en cache durante max-age y lo revalidan con el ETag (If-None-Match),
+     * al encontrar un kid desconocido en un token pueden volver a consultarlo
+     */
+    @Autowired
+    private LlavesJwt llavesJwt;
+
+    @Autowired
+    private LlavesJwtProperties properties;
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks(WebRequest request) {
+        List<Map<String, Object>> keys = new ArrayList<>();
+        StringBuilder kids = new StringBuilder();
+        for (LlavesJwt.LlaveFirma llave : llavesJwt.publicadas()) {
+            keys.add(llave.jwk());
+            kids.append(llave.getKid()).append(':').append(llave.getPublica().getModulus()).append(';');
+        }
+        String etag = etag(kids.toString());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(properties.getJwksMaxAgeSegundos(), TimeUnit.SECONDS).cachePublic())
+                .eTag(etag)
+                .body(Collections.singletonMap("keys", keys));
+    }
+
+    private String etag(String contenido) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(contenido.getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.springboot.oauth.controller;
+
+import com.springboot.oauth.security.JwtKidAccessTokenConverter;
+import com.springboot.oauth.service.TokensRevocados;
+import com.springboot.oauth.service.UsuariosModificados;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/revocaciones")
+public class RevocacionController {
+
+    /**
+     * EndPoints de administración de TokensRevocados, permiten revocar un token (access o refresh
+     * token) o todos los tokens emitidos hasta ahora a un usuario, por ejemplo cuando se cambia
+     * su password o sus roles en el microservicio-administrador.
+     *
+     * Al revocar un usuario también se marca en UsuariosModificados para que su siguiente
+     * refresh_token se valide con el microservicio-administrador
+     *
+     * NOTA: estos endPoints se protegen en AdministracionSecurityConfig, solo para clientes con ROLE_ADMIN
+     */
+    @Autowired
+    private TokensRevocados tokensRevocados;
+
+    @Autowired
+    private UsuariosModificados usuariosModificados;
+
+    @Autowired
+    private JwtKidAccessTokenConverter accessTokenConverter;
+
+    @GetMapping("/estadisticas")
+    public Map<String, Object> estadisticas() {
+        return tokensRevocados.estadisticas();
+    }
+
+    /**
+     * Solo se revocan tokens que se pueden validar, un token inválido, expirado o ya revocado
+     * no se tiene que recordar
+     */
+    @PostMapping("/tokens")
+    public ResponseEntity<Void> revocarToken(@RequestParam("token") String token) {
+        try {
+            tokensRevocados.revocarToken(accessTokenConverter.leerClaims(token));
+        } catch (InvalidTokenException e) {
+            // el token ya no se acepta, no es necesario recordarlo
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/usuarios/{username}")
+    public ResponseEntity<Void> revocarUsuario(@PathVariable String username) {
+        tokensRevocados.revocarUsuario(username);
+        usuariosModificados.marcar(username);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,75 @@
+package com.springboot.oauth.controller;
+
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import com.springboot.oauth.service.IntentosLoginTracker;
+import com.springboot.oauth.service.UsuarioCache;
+import com.springboot.oauth.service.UsuariosInexistentesCache;
+import com.springboot.oauth.service.UsuariosModificados;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/usuarios/cache")
+public class UsuarioCacheController {
+
+    /**
+     * EndPoints de administración de la cache de usuarios, permiten desalojar un usuario
+     * o toda la cache cuando se modifica un usuario directamente en el microservicio-administrador
+     * y consultar las estadísticas de aciertos, fallos y desalojos para dimensionar la cache
+     *
+     * También se desaloja el username de la cache de usuarios inexistentes para que un
+     * usuario recién creado pueda iniciar sesión sin esperar el tiempo de vida de la cache,
+     * y se marca en UsuariosModificados para que su siguiente refresh_token se valide
+     * con el microservicio-administrador, la invalidación se envía a las demás instancias del
+     * cluster con ClusterInvalidaciones. El contador de intentos fallidos también se olvida para
+     * que un usuario que se habilitó de nuevo en el microservicio-administrador no se vuelva a
+     * deshabilitar con los intentos que se contaron antes
+     *
+     * NOTA: estos endPoints se protegen en AdministracionSecurityConfig, solo para clientes con ROLE_ADMIN
+     */
+    @Autowired
+    private UsuarioCache usuarioCache;
+
+    @Autowired
+    private UsuariosInexistentesCache usuariosInexistentes;
+
+    @Autowired
+    private UsuariosModificados usuariosModificados;
+
+    @Autowired
+    private IntentosLoginTracker intentosLoginTracker;
+
+    @Autowired
+    private ClusterInvalidaciones cluster;
+
+    @GetMapping("/estadisticas")
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> estadisticas = new LinkedHashMap<>(usuarioCache.estadisticas());
+        estadisticas.put("inexistentes", usuariosInexistentes.estadisticas());
+        return estadisticas;
+    }
+
+    @DeleteMapping("/{username}")
+    public ResponseEntity<Void> invalidar(@PathVariable String username) {
+        usuarioCache.invalidar(username);
+        usuariosInexistentes.invalidar(username);
+        usuariosModificados.marcar(username);
+        intentosLoginTracker.olvidar(username);
+        cluster.usuarioActualizado(username);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> invalidarTodos() {
+        usuarioCache.invalidarTodos();
+        usuariosInexistentes.invalidarTodos();
+        usuariosModificados.marcarTodos();
+        intentosLoginTracker.olvidarTodos();
+        cluster.usuariosInvalidados();
+        return ResponseEntity.noContent().build();
+    }
+}
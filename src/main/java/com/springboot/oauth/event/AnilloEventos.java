@@ -0,0 +1,117 @@
+package com.springboot.oauth.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class AnilloEventos {
+
+    /**
+     * Buffer circular acotado sin bloqueos para varios productores y un solo consumidor, cada
+     * posición del anillo tiene su número de secuencia que indica si está libre o publicada:
+     *
+     * libre para la vuelta n = secuencia igual a la posición que la va a ocupar
+     * publicada = secuencia igual a la posición + 1
+     *
+     * El productor reserva una posición con un compareAndSet sobre la cola, escribe los campos
+     * del evento en los arreglos y publica la secuencia, el consumidor lee los campos y libera
+     * la posición para la siguiente vuelta. Los campos se guardan en arreglos reservados al
+     * crear el anillo por lo que publicar un evento no crea objetos.
+     *
+     * NOTA: la capacidad se redondea a la siguiente potencia de 2
+     */
+    private final int mascara;
+
+    private final AtomicLongArray secuencias;
+
+    private final EventoAutenticacion[] eventos;
+
+    private final long[] momentos;
+
+    private final String[] usernames;
+
+    private final String[] detalles;
+
+    private final int[] numeros;
+
+    private final AtomicLong cola = new AtomicLong();
+
+    private volatile long cabeza;
+
+    public AnilloEventos(int capacidad) {
+        int tamanio = capacidad <= 2 ? 2 : Integer.highestOneBit(capacidad - 1) << 1;
+        this.mascara = tamanio - 1;
+        this.secuencias = new AtomicLongArray(tamanio);
+        this.eventos = new EventoAutenticacion[tamanio];
+        this.momentos = new long[tamanio];
+        this.usernames = new String[tamanio];
+        this.detalles = new String[tamanio];
+        this.numeros = new int[tamanio];
+        for (int i = 0; i < tamanio; i++) {
+            secuencias.set(i, i);
+        }
+    }
+
+    /**
+     * Regresa false si el anillo está lleno, puede llamarse desde cualquier hilo
+     */
+    public boolean publicar(EventoAutenticacion evento, String username, String detalle, int numero) {
+        long posicion = cola.get();
+        while (true) {
+            int indice = (int) posicion & mascara;
+            long diferencia = secuencias.get(indice) - posicion;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(posicion, posicion + 1)) {
+                    eventos[indice] = evento;
+                    momentos[indice] = System.currentTimeMillis();
+                    usernames[indice] = username;
+                    detalles[indice] = detalle;
+                    numeros[indice] = numero;
+                    secuencias.lazySet(indice, posicion + 1);
+                    return true;
+                }
+                posicion = cola.get();
+            } else if (diferencia < 0) {
+                return false;
+            } else {
+                posicion = cola.get();
+            }
+        }
+    }
+
+    /**
+     * Entrega al consumidor hasta maximo eventos en el orden en que se publicaron y regresa
+     * cuántos se entregaron, solo se debe llamar desde el hilo consumidor
+     */
+    public int drenar(Consumidor consumidor, int maximo) {
+        int entregados = 0;
+        while (entregados < maximo) {
+            int indice = (int) cabeza & mascara;
+            if (secuencias.get(indice) != cabeza + 1) {
+                break;
+            }
+            consumidor.aceptar(eventos[indice], momentos[indice], usernames[indice], detalles[indice], numeros[indice]);
+            usernames[indice] = null;
+            detalles[indice] = null;
+            secuencias.lazySet(indice, cabeza + mascara + 1);
+            cabeza++;
+            entregados++;
+        }
+        return entregados;
+    }
+
+    public int getCapacidad() {
+        return mascara + 1;
+    }
+
+    /**
+     * Número aproximado de eventos publicados que no se han drenado
+     */
+    public long pendientes() {
+        return Math.max(0, cola.get() - cabeza);
+    }
+
+    @FunctionalInterface
+    public interface Consumidor {
+        void aceptar(EventoAutenticacion evento, long momento, String username, String detalle, int numero);
+    }
+}
@@ -0,0 +1,186 @@
+package com.springboot.oauth.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+@Component
+public class AuditoriaAutenticacion {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditoriaAutenticacion.class);
+
+    /**
+     * Logger de la auditoría, en logback-spring.xml se escribe en su propio archivo con rotación
+     */
+    private static final Logger auditoria = LoggerFactory.getLogger("AUDITORIA");
+
+    /**
+     * Pipeline de los eventos de autenticación, antes UsuarioService y AuthenticationSuccessErrorHandler
+     * escribían varias líneas de log por login en el hilo de la petición, ahora cada evento se
+     * publica en un AnilloEventos y un hilo consumidor los escribe en lotes en el logger AUDITORIA
+     * con una línea JSON por evento.
+     *
+     * auditoria.capacidad = número de eventos que puede guardar el anillo
+     * auditoria.politica = qué hacer cuando el anillo está lleno, DESCARTAR el evento (se cuenta en
+     * oauth.auditoria.descartados) o BLOQUEAR el hilo de la petición hasta que exista espacio
+     * auditoria.lote = número máximo de eventos que se escriben en cada llamada al logger
+     * auditoria.espera-ms = tiempo que espera el consumidor cuando el anillo está vacío
+     */
+    public enum Politica {
+        DESCARTAR,
+        BLOQUEAR
+    }
+
+    private final AnilloEventos anillo;
+
+    private final Politica politica;
+
+    private final int lote;
+
+    private final long esperaNanos;
+
+    private final LongAdder descartados = new LongAdder();
+
+    private final StringBuilder linea = new StringBuilder(256);
+
+    private final Thread consumidor;
+
+    private volatile boolean activo = true;
+
+    public AuditoriaAutenticacion(@Value("${auditoria.capacidad:8192}") int capacidad,
+                                  @Value("${auditoria.politica:DESCARTAR}") Politica politica,
+                                  @Value("${auditoria.lote:256}") int lote,
+                                  @Value("${auditoria.espera-ms:5}") long esperaMs) {
+        this.anillo = new AnilloEventos(capacidad);
+        this.politica = politica;
+        this.lote = Math.max(1, lote);
+        this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, esperaMs));
+        this.consumidor = new Thread(this::consumir, "auditoria-autenticacion");
+        this.consumidor.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        consumidor.start();
+    }
+
+    public void publicar(EventoAutenticacion evento, String username) {
+        publicar(evento, username, null, 0);
+    }
+
+    public void publicar(EventoAutenticacion evento, String username, String detalle) {
+        publicar(evento, username, detalle, 0);
+    }
+
+    public void publicar(EventoAutenticacion evento, String username, int numero) {
+        publicar(evento, username, null, numero);
+    }
+
+    private void publicar(EventoAutenticacion evento, String username, String detalle, int numero) {
+        while (!anillo.publicar(evento, username, detalle, numero)) {
+            if (politica == Politica.DESCARTAR || !activo) {
+                descartados.increment();
+                return;
+            }
+            LockSupport.parkNanos(esperaNanos);
+        }
+    }
+
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    public long getPendientes() {
+        return anillo.pendientes();
+    }
+
+    /**
+     * El anillo solo admite un consumidor y linea no es thread-safe, por ello el drenado final
+     * al detener la aplicación también lo realiza este hilo cuando activo cambia a false
+     */
+    private void consumir() {
+        while (activo) {
+            try {
+                if (anillo.drenar(this::agregar, lote) > 0) {
+                    escribir();
+                } else {
+                    LockSupport.parkNanos(esperaNanos);
+                }
+            } catch (RuntimeException e) {
+                linea.setLength(0);
+                log.error("No se pudo escribir el lote de auditoría", e);
+            }
+        }
+        try {
+            while (anillo.drenar(this::agregar, lote) > 0) {
+                escribir();
+            }
+        } catch (RuntimeException e) {
+            linea.setLength(0);
+            log.error("No se pudieron escribir los eventos de auditoría pendientes", e);
+        }
+    }
+
+    private void agregar(EventoAutenticacion evento, long momento, String username, String detalle, int numero) {
+        if (linea.length() > 0) {
+            linea.append('\n');
+        }
+        linea.append("{\"momento\":\"").append(Instant.ofEpochMilli(momento))
+                .append("\",\"evento\":\"").append(evento.name()).append('"');
+        if (username != null) {
+            linea.append(",\"usuario\":");
+            texto(username);
+        }
+        if (detalle != null) {
+            linea.append(",\"detalle\":");
+            texto(detalle);
+        }
+        if (numero != 0) {
+            linea.append(",\"numero\":").append(numero);
+        }
+        linea.append('}');
+    }
+
+    private void escribir() {
+        auditoria.info(linea.toString());
+        linea.setLength(0);
+    }
+
+    private void texto(String valor) {
+        linea.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"' || c == '\\') {
+                linea.append('\\').append(c);
+            } else if (c < 0x20) {
+                linea.append(String.format("\\u%04x", (int) c));
+            } else {
+                linea.append(c);
+            }
+        }
+        linea.append('"');
+    }
+
+    /**
+     * Al detener la aplicación el consumidor escribe los eventos que quedan en el anillo y
+     * termina, aquí solo se espera a que termine, si no termina a tiempo los eventos no se drenan
+     * desde este hilo para no tener dos consumidores del anillo al mismo tiempo
+     */
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        activo = false;
+        LockSupport.unpark(consumidor);
+        consumidor.join(TimeUnit.SECONDS.toMillis(5));
+        if (consumidor.isAlive()) {
+            log.warn("El hilo de auditoría no terminó en 5 s, quedan {} eventos sin escribir", anillo.pendientes());
+        }
+    }
+}
@@ -1,15 +1,16 @@
 package com.springboot.oauth.event;
 
 import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import com.springboot.oauth.security.ServicioSaturadoException;
 import com.springboot.oauth.service.IUsuarioService;
+import com.springboot.oauth.service.IntentosLoginTracker;
 import feign.FeignException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetails;
 import org.springframework.stereotype.Component;
 
@@ -17,11 +18,15 @@ import org.springframework.stereotype.Component;
 @Component
 public class AuthenticationSuccessErrorHandler implements AuthenticationEventPublisher {
 
-    private static  final Logger log = LoggerFactory.getLogger(AuthenticationSuccessErrorHandler.class);
-
     @Autowired
     private IUsuarioService usuarioService;
 
+    @Autowired
+    private IntentosLoginTracker intentosLoginTracker;
+
+    @Autowired
+    private AuditoriaAutenticacion auditoria;
+
     /**
      * Esta  interfaz AuthenticationEventPublisher  permite validar el éxito y el fracaso
      * del login del usuario, se realiza una validación para no mostrar la autenticación
@@ -33,6 +38,15 @@ public class AuthenticationSuccessErrorHandler implements AuthenticationEventPub
      * y deshabilitar el usuario, en caso contrario se valida y se actualiza el contador
      * de los intentos falliados de la tabla de ADMINISTRADOR del campo intentos al ser
      * correcto el inicio de sesión
+     *
+     * NOTA: el conteo de los intentos se realiza en IntentosLoginTracker en memoria y este
+     * se encarga de escribir los cambios de intentos y enabled en el microservicio-administrador
+     *
+     * NOTA: los eventos del login se registran en AuditoriaAutenticacion, que los escribe en el
+     * log de auditoría desde su propio hilo
+     *
+     * NOTA: si el login falló por que el microservicio-administrador no respondió
+     * (ServicioSaturadoException) no se cuenta un intento fallido, el password no se validó
      */
 
     @Override
@@ -45,34 +59,31 @@ public class AuthenticationSuccessErrorHandler implements AuthenticationEventPub
             return;
         }
         UserDetails user = (UserDetails) authentication.getPrincipal();
-        log.info("Success login : "+user.getUsername());
+        auditoria.publicar(EventoAutenticacion.LOGIN_EXITOSO, user.getUsername());
 
         AdministradorEntity usuario = usuarioService.findByUsername(authentication.getName());
-        if(usuario.getIntentos() != null && usuario.getIntentos() > 0 ){
-            usuario.setIntentos(0);
-            usuarioService.update(usuario, usuario.getId());
-        }
+        intentosLoginTracker.registrarExito(usuario);
     }
 
     @Override
     public void publishAuthenticationFailure(AuthenticationException exception, Authentication authentication) {
-        log.info("Error en el login: " + exception.getMessage());
+        auditoria.publicar(EventoAutenticacion.LOGIN_FALLIDO, authentication.getName(), exception.getMessage());
+        if (exception.getCause() instanceof ServicioSaturadoException) {
+            return;
+        }
         try {
             AdministradorEntity usuario = usuarioService.findByUsername(authentication.getName());
-            if (usuario.getIntentos() == null) {
-                usuario.setIntentos(0);
-            }
-            log.info("Intento actual es de : "+usuario.getIntentos());
-            usuario.setIntentos(usuario.getIntentos() + 1);
-            log.info("Intento después es de : "+usuario.getIntentos());
+            int intentos = intentosLoginTracker.registrarFallo(usuario);
 
-            if(usuario.getIntentos() >= 3){
-                log.info(String.format("El usuario %s ha sido deshabilitado por máxicomo de intentos.", usuario.getUsername()));
-                usuario.setEnabled(false);
+            if(intentos >= intentosLoginTracker.getMaximo()){
+                auditoria.publicar(EventoAutenticacion.USUARIO_BLOQUEADO, usuario.getUsername(), intentos);
+            } else {
+                auditoria.publicar(EventoAutenticacion.INTENTO_FALLIDO, usuario.getUsername(), intentos);
             }
-            usuarioService.update(usuario, usuario.getId());
-        } catch (FeignException e) {
-            log.error(String.format("El usuario %s no existe en el sistema", authentication.getName()));
+        } catch (FeignException | UsernameNotFoundException e) {
+            auditoria.publicar(EventoAutenticacion.USUARIO_NO_ENCONTRADO, authentication.getName());
+        } catch (ServicioSaturadoException e) {
+            // el usuario no se pudo obtener, el intento se descarta
         }
 
     }
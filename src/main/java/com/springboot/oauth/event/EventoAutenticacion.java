@@ -0,0 +1,20 @@
+package com.springboot.oauth.event;
+
+/**
+ * Eventos de autenticación que se escriben en el log de auditoría (ver AuditoriaAutenticacion)
+ *
+ * USUARIO_CARGADO = se obtuvo el usuario para validar su password, numero = número de roles
+ * USUARIO_NO_ENCONTRADO = el username no existe en el microservicio-administrador
+ * LOGIN_EXITOSO = login correcto
+ * LOGIN_FALLIDO = login rechazado, detalle = mensaje de la excepción
+ * INTENTO_FALLIDO = intento fallido registrado, numero = intentos acumulados
+ * USUARIO_BLOQUEADO = usuario deshabilitado por máximo de intentos, numero = intentos acumulados
+ */
+public enum EventoAutenticacion {
+    USUARIO_CARGADO,
+    USUARIO_NO_ENCONTRADO,
+    LOGIN_EXITOSO,
+    LOGIN_FALLIDO,
+    INTENTO_FALLIDO,
+    USUARIO_BLOQUEADO
+}
@@ -0,0 +1,105 @@
+package com.springboot.oauth.metrics;
+
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import com.springboot.oauth.event.AuditoriaAutenticacion;
+import com.springboot.oauth.security.SecretoClienteCache;
+import com.springboot.oauth.security.TokenVerificadoCache;
+import com.springboot.oauth.security.VerificadorPassword;
+import com.springboot.oauth.service.TokensRevocados;
+import com.springboot.oauth.service.UsuarioCache;
+import com.springboot.oauth.service.UsuariosInexistentesCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.function.ToDoubleFunction;
+
+@Component
+public class MetricasCaches {
+
+    /**
+     * Registra las caches de Caffeine (cache.gets, cache.evictions, cache.size ...) con el tag
+     * cache, la cola del pool de BCrypt, el tamaño del registro de TokensRevocados, los eventos
+     * de AuditoriaAutenticacion pendientes y descartados, los mensajes de ClusterInvalidaciones
+     * por resultado (enviados, recibidos, fallidos, descartados) y los logins de usuarios inexistentes que se rechazaron
+     * desde la cache negativa.
+     *
+     * NOTA: no es un MeterBinder por que spring boot los registra al crear el MeterRegistry, que se
+     * crea durante la configuración de seguridad antes de que existan estas caches
+     */
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private UsuarioCache usuarioCache;
+
+    @Autowired
+    private UsuariosInexistentesCache usuariosInexistentes;
+
+    @Autowired
+    private SecretoClienteCache secretoClienteCache;
+
+    @Autowired
+    private TokenVerificadoCache tokenVerificadoCache;
+
+    @Autowired
+    private VerificadorPassword verificadorPassword;
+
+    @Autowired
+    private TokensRevocados tokensRevocados;
+
+    @Autowired
+    private AuditoriaAutenticacion auditoria;
+
+    @Autowired
+    private ClusterInvalidaciones cluster;
+
+    @PostConstruct
+    public void registrar() {
+        new CaffeineCacheMetrics(usuarioCache.getCache(), "usuarios", Tags.empty()).bindTo(registry);
+        new CaffeineCacheMetrics(usuariosInexistentes.getCache(), "usuarios-inexistentes", Tags.empty()).bindTo(registry);
+        new CaffeineCacheMetrics(secretoClienteCache.getCache(), "secretos-clientes", Tags.empty()).bindTo(registry);
+        new CaffeineCacheMetrics(tokenVerificadoCache.getCache(), "tokens-verificados", Tags.empty()).bindTo(registry);
+
+        FunctionCounter.builder("oauth.login.usuarios.inexistentes", usuariosInexistentes, UsuariosInexistentesCache::getCortocircuitos)
+                .description("Logins de usernames que no existen")
+                .tag("origen", "cache")
+                .register(registry);
+        Gauge.builder("oauth.bcrypt.cola", verificadorPassword, VerificadorPassword::getTareasEnCola)
+                .description("Validaciones de BCrypt en espera")
+                .register(registry);
+        FunctionCounter.builder("oauth.auditoria.descartados", auditoria, AuditoriaAutenticacion::getDescartados)
+                .description("Eventos de auditoría descartados por tener el anillo lleno")
+                .register(registry);
+        Gauge.builder("oauth.auditoria.pendientes", auditoria, AuditoriaAutenticacion::getPendientes)
+                .description("Eventos de auditoría pendientes de escribir")
+                .register(registry);
+        Gauge.builder("oauth.revocaciones", tokensRevocados, TokensRevocados::getJtiRevocados)
+                .description("Revocaciones vigentes")
+                .tag("tipo", "jti")
+                .register(registry);
+        Gauge.builder("oauth.revocaciones", tokensRevocados, TokensRevocados::getUsuariosRevocados)
+                .description("Revocaciones vigentes")
+                .tag("tipo", "usuario")
+                .register(registry);
+        cluster("enviados", ClusterInvalidaciones::getEnviados);
+        cluster("recibidos", ClusterInvalidaciones::getRecibidos);
+        cluster("fallidos", ClusterInvalidaciones::getFallidos);
+        cluster("descartados", ClusterInvalidaciones::getDescartados);
+        Gauge.builder("oauth.cluster.pendientes", cluster, ClusterInvalidaciones::getPendientes)
+                .description("Mensajes del cluster pendientes de enviar")
+                .register(registry);
+    }
+
+    private void cluster(String resultado, ToDoubleFunction<ClusterInvalidaciones> contador) {
+        FunctionCounter.builder("oauth.cluster.mensajes", cluster, contador)
+                .description("Mensajes de invalidación entre instancias del cluster")
+                .tag("resultado", resultado)
+                .register(registry);
+    }
+}
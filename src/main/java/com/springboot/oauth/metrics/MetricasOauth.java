@@ -0,0 +1,206 @@
+package com.springboot.oauth.metrics;
+
+import feign.FeignException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Component
+public class MetricasOauth {
+
+    /**
+     * Métricas de cada etapa del login que se publican en /actuator/prometheus, cuando el p99
+     * de /oauth/token sube permiten saber si el tiempo se va en el microservicio-administrador
+     * (oauth.feign), en BCrypt (oauth.bcrypt), en la información adicional del token
+     * (oauth.token.enhance) o en la firma del JWT (oauth.jwt.firma).
+     *
+     * oauth.feign = llamadas de UsuarioFeignClient por metodo y resultado (exito, no_encontrado, error)
+     * oauth.bcrypt = validación y encriptación de passwords en el pool de BCrypt por operacion
+     * oauth.bcrypt.espera = tiempo que la validación espera en la cola del pool de BCrypt
+     * oauth.token.enhance = InfoAdicionalToken.enhance
+     * oauth.jwt.firma = serialización y firma del JWT por algoritmo y encoder
+     * oauth.grant = petición completa a /oauth/token por grant_type, client_id y status
+     * oauth.login.bloqueos = usuarios deshabilitados por máximo de intentos
+     * oauth.login.usuarios.inexistentes = logins de usernames que no existen por origen (remoto, cache)
+     * oauth.login.intentos.reinicios = contadores de intentos que se reiniciaron con un login correcto
+     * oauth.refresh = grants refresh_token por ruta (local con los claims del token, remoto con UsuarioService)
+     * oauth.usuarios.obsoletos = usuarios que se tomaron del último valor conocido por que el
+     * microservicio-administrador no respondió, por motivo (circuito_abierto, timeout, error)
+     * oauth.limite.excedidos = peticiones a /oauth/token rechazadas con 429 por tipo de límite (ip, cliente, usuario)
+     * oauth.token.revocados = tokens rechazados por estar revocados por motivo (jti, usuario)
+     *
+     * Los histogramas se habilitan con management.metrics.distribution.percentiles-histogram.oauth
+     *
+     * Las métricas sin tags se registran al crear la clase y las que tienen tags se registran la
+     * primera vez que aparece cada combinación y se guardan en un mapa por sus tags, así cada
+     * medición es una búsqueda en el mapa y no un builder más la búsqueda en el MeterRegistry
+     */
+    public static final MetricasOauth NINGUNA = new MetricasOauth(new CompositeMeterRegistry());
+
+    private final MeterRegistry registry;
+
+    private final Timer enhance;
+
+    private final Counter bloqueos;
+
+    private final Counter inexistentesRemoto;
+
+    private final Counter reinicios;
+
+    private final Timer esperaBCrypt;
+
+    private final ConcurrentMap<String, Timer> feign = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> bcrypt = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> firmas = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> grants = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Counter> refresh = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Counter> obsoletos = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Counter> limites = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Counter> revocados = new ConcurrentHashMap<>();
+
+    public MetricasOauth(MeterRegistry registry) {
+        this.registry = registry;
+        this.enhance = Timer.builder("oauth.token.enhance")
+                .description("InfoAdicionalToken.enhance")
+                .register(registry);
+        this.bloqueos = Counter.builder("oauth.login.bloqueos")
+                .description("Usuarios deshabilitados por máximo de intentos")
+                .register(registry);
+        this.inexistentesRemoto = Counter.builder("oauth.login.usuarios.inexistentes")
+                .description("Logins de usernames que no existen")
+                .tag("origen", "remoto")
+                .register(registry);
+        this.reinicios = Counter.builder("oauth.login.intentos.reinicios")
+                .description("Contadores de intentos reiniciados por un login correcto")
+                .register(registry);
+        this.esperaBCrypt = Timer.builder("oauth.bcrypt.espera")
+                .description("Tiempo en la cola del pool de BCrypt")
+                .register(registry);
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Ejecuta una llamada de UsuarioFeignClient midiendo su tiempo, el resultado se toma
+     * de la excepción de Feign, un 404 del microservicio-administrador es no_encontrado
+     */
+    public <T> T feign(String metodo, Supplier<T> llamada) {
+        long inicio = System.nanoTime();
+        String resultado = "exito";
+        try {
+            return llamada.get();
+        } catch (FeignException.NotFound e) {
+            resultado = "no_encontrado";
+            throw e;
+        } catch (RuntimeException e) {
+            resultado = "error";
+            throw e;
+        } finally {
+            String tipo = resultado;
+            feign.computeIfAbsent(metodo + ":" + resultado, llave -> Timer.builder("oauth.feign")
+                    .description("Llamadas al microservicio-administrador")
+                    .tag("metodo", metodo)
+                    .tag("resultado", tipo)
+                    .register(registry))
+                    .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void bcrypt(String operacion, long nanos) {
+        bcrypt.computeIfAbsent(operacion, llave -> Timer.builder("oauth.bcrypt")
+                .description("Validación y encriptación de passwords con BCrypt")
+                .tag("operacion", operacion)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void esperaBCrypt(long nanos) {
+        esperaBCrypt.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T enhance(Supplier<T> enhancer) {
+        return enhance.record(enhancer);
+    }
+
+    public void firma(String algoritmo, String encoder, long nanos) {
+        firmas.computeIfAbsent(algoritmo + ":" + encoder, llave -> Timer.builder("oauth.jwt.firma")
+                .description("Serialización y firma del JWT")
+                .tag("algoritmo", algoritmo)
+                .tag("encoder", encoder)
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * grant_type y client_id ya vienen acotados por MetricasGrantFilter a los valores registrados
+     */
+    public void grant(String grantType, String clientId, int status, long nanos) {
+        grants.computeIfAbsent(grantType + ":" + clientId + ":" + status, llave -> Timer.builder("oauth.grant")
+                .description("Peticiones a /oauth/token")
+                .tag("grant_type", grantType)
+                .tag("client_id", clientId)
+                .tag("status", String.valueOf(status))
+                .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void refresh(String ruta) {
+        refresh.computeIfAbsent(ruta, llave -> Counter.builder("oauth.refresh")
+                .description("Grants refresh_token por ruta")
+                .tag("ruta", ruta)
+                .register(registry))
+                .increment();
+    }
+
+    public void usuarioObsoleto(String motivo) {
+        obsoletos.computeIfAbsent(motivo, llave -> Counter.builder("oauth.usuarios.obsoletos")
+                .description("Usuarios obsoletos utilizados por falla del microservicio-administrador")
+                .tag("motivo", motivo)
+                .register(registry))
+                .increment();
+    }
+
+    public void limiteExcedido(String tipo) {
+        limites.computeIfAbsent(tipo, llave -> Counter.builder("oauth.limite.excedidos")
+                .description("Peticiones rechazadas por límite de tasa")
+                .tag("tipo", tipo)
+                .register(registry))
+                .increment();
+    }
+
+    public void tokenRevocado(String motivo) {
+        revocados.computeIfAbsent(motivo, llave -> Counter.builder("oauth.token.revocados")
+                .description("Tokens rechazados por estar revocados")
+                .tag("motivo", motivo)
+                .register(registry))
+                .increment();
+    }
+
+    public void bloqueo() {
+        bloqueos.increment();
+    }
+
+    public void usuarioInexistente() {
+        inexistentesRemoto.increment();
+    }
+
+    public void reinicioIntentos() {
+        reinicios.increment();
+    }
+}
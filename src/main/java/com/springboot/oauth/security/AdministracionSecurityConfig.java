@@ -0,0 +1,55 @@
+package com.springboot.oauth.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.client.ClientDetailsUserDetailsService;
+
+@Configuration
+@Order(3)
+public class AdministracionSecurityConfig extends WebSecurityConfigurerAdapter {
+
+    /**
+     * Configuración de seguridad de los endPoints de administración (/revocaciones y
+     * /usuarios/cache), los consumen el microservicio-administrador y scripts, no un navegador,
+     * por ello no se valida CSRF.
+     *
+     * Solo las aplicaciones cliente registradas con la authority ROLE_ADMIN pueden consultarlos
+     * autenticándose con HTTP Basic con su clientId y su secret, un usuario final autenticado
+     * no puede revocar los tokens ni desalojar de la cache a otros usuarios:
+     *
+     * authorization.clientes.adminapp.authorities=ROLE_ADMIN
+     *
+     * /actuator/prometheus también se protege aquí, Prometheus se registra como un cliente con la
+     * authority ROLE_METRICAS y envía su clientId y secret con basic_auth en su scrape_config:
+     *
+     * authorization.clientes.prometheus.authorities=ROLE_METRICAS
+     */
+    @Autowired
+    private ClientDetailsService clientDetailsService;
+
+    @Autowired
+    private SecretoClienteCache secretoClienteCache;
+
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+        auth.userDetailsService(new ClientDetailsUserDetailsService(clientDetailsService))
+                .passwordEncoder(secretoClienteCache.encoder());
+    }
+
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http.requestMatchers().antMatchers("/revocaciones/**", "/usuarios/cache/**", "/actuator/prometheus")
+                .and().authorizeRequests()
+                .antMatchers("/actuator/prometheus").hasAnyRole("METRICAS", "ADMIN")
+                .anyRequest().hasRole("ADMIN")
+                .and().httpBasic()
+                .and().csrf().disable()
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+    }
+}
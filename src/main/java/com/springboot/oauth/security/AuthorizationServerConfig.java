@@ -1,5 +1,10 @@
 package com.springboot.oauth.security;
 
+import com.springboot.oauth.metrics.MetricasOauth;
+import com.springboot.oauth.service.IntentosLoginTracker;
+import com.springboot.oauth.service.TokensRevocados;
+import com.springboot.oauth.service.UsuariosInexistentesCache;
+import com.springboot.oauth.service.UsuariosModificados;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,18 +13,24 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.oauth2.config.annotation.builders.InMemoryClientDetailsServiceBuilder;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
 import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
-import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
 
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 @Configuration
 @EnableAuthorizationServer
@@ -27,6 +38,10 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
 
     private final static Logger log = LoggerFactory.getLogger(AuthorizationServerConfig.class);
 
+    private static final String PREFIJO_BCRYPT = "{bcrypt}";
+
+    private static final Pattern BCRYPT = Pattern.compile("\\A\\$2(a|y|b)?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
     /**
      * En esta clase se realiza la configuración  del servidor de autorización, que se encargara
      * de todo el proceso del login por el lado de ouath2, generacón del token desde el proceso de
@@ -40,9 +55,27 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
     @Value("${authorization.username}")
     private String userApp;
 
-    @Value("${authorization.key}")
+    @Value("${authorization.key:}")
     private String keyApp;
 
+    @Autowired
+    private ClientesOAuthProperties clientesProperties;
+
+    @Autowired
+    private LimitesTasaProperties limitesProperties;
+
+    @Autowired
+    private SecretoClienteCache secretoClienteCache;
+
+    @Autowired
+    private LlavesJwt llavesJwt;
+
+    @Autowired
+    private LlavesJwtProperties llavesJwtProperties;
+
+    @Autowired
+    private TokenVerificadoCache tokenVerificadoCache;
+
 
     /**
      * Se realizo la configuración previamente en el Paso 3 de SpringSecurityConfig
@@ -58,17 +91,49 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
 
     @Autowired
     private InfoAdicionalToken infoAdicionalToken;
+
+    @Autowired
+    private UsuariosInexistentesCache usuariosInexistentes;
+
+    @Autowired
+    private MetricasOauth metricas;
+
+    @Autowired
+    private UserDetailsService usuarioService;
+
+    @Autowired
+    private UsuariosModificados usuariosModificados;
+
+    @Autowired
+    private IntentosLoginTracker intentosLoginTracker;
+
+    @Autowired
+    private TokensRevocados tokensRevocados;
+
+    private LimiteTasaFilter limiteTasaFilter;
+
     /**
      *Paso 5: Realizar la configuración de  AuthorizationServerSecurityConfigurer
      * que son los permisos que van a tener nuestros endPoints del servidor de autorización
      * para generar el token y también para validar el token
      * tokenKeyAccess= permitir a todos
      * checkTokenAccess = valida el token que requiere autenticacion
+     *
+     * MetricasGrantFilter: mide la petición completa a /oauth/token, se agrega primero
+     * LimiteTasaFilter: responde 429 a las peticiones que superan el límite por ip antes de
+     * cualquier otro trabajo (authorization.limites.habilitado), los límites por cliente y
+     * username los aplica su interceptor en el TokenEndpoint (ver Paso 1)
+     * passwordEncoder: valida el secret de los clientes recordando las validaciones correctas
      */
     @Override
     public void configure(AuthorizationServerSecurityConfigurer security) throws Exception {
       security.tokenKeyAccess("permitAll()")
-              .checkTokenAccess("isAuthenticated()");
+              .checkTokenAccess("isAuthenticated()")
+              .passwordEncoder(secretoClienteCache.encoder());
+      security.addTokenEndpointAuthenticationFilter(new MetricasGrantFilter(metricas, clientesRegistrados().keySet()));
+      if (limitesProperties.isHabilitado()) {
+          security.addTokenEndpointAuthenticationFilter(limiteTasaFilter());
+      }
     }
 
     /**
@@ -83,26 +148,67 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
      * es decir como se obtendrá el token se utiliza el password  cuando es con credenciales es
      * decir cuando los usuarios existen en nuestro sistema del backend
      *
+     * Los clientes se toman del registro authorization.clientes de ClientesOAuthProperties,
+     * la vigencia de sus tokens se registra en TokensRevocados y la vigencia más larga de sus
+     * refresh token se compara con el ttl de UsuariosModificados
+     *
+     * El secret se puede registrar ya encriptado con BCrypt ($2a$10$... o {bcrypt}$2a$10$...),
+     * así no se encripta cada secret al iniciar la aplicación
      */
     @Override
     public void configure(ClientDetailsServiceConfigurer clients) throws Exception {
-        clients.inMemory().withClient(userApp)
-                .secret(passwordEncoder.encode(keyApp))
-                .scopes("read","write")
-                .authorizedGrantTypes("password", "refresh_token")
-                .accessTokenValiditySeconds(3600)
-                .refreshTokenValiditySeconds(3600)
-                .and()
-                .withClient("androidapp")
-                .secret(passwordEncoder.encode(keyApp))
-                .scopes("read","write")
-                .authorizedGrantTypes("password", "refresh_token")
-                .accessTokenValiditySeconds(3600)
-                .refreshTokenValiditySeconds(3600);
+        InMemoryClientDetailsServiceBuilder builder = clients.inMemory();
+        int refreshTokenMaximo = 0;
+        for (Map.Entry<String, ClientesOAuthProperties.Cliente> entry : clientesRegistrados().entrySet()) {
+            ClientesOAuthProperties.Cliente cliente = entry.getValue();
+            builder.withClient(entry.getKey())
+                    .secret(secretEncriptado(cliente.getSecret()))
+                    .scopes(cliente.getScopes().toArray(new String[0]))
+                    .authorizedGrantTypes(cliente.getGrantTypes().toArray(new String[0]))
+                    .authorities(cliente.getAuthorities().toArray(new String[0]))
+                    .accessTokenValiditySeconds(cliente.getAccessTokenValiditySeconds())
+                    .refreshTokenValiditySeconds(cliente.getRefreshTokenValiditySeconds());
+            tokensRevocados.registrarCliente(entry.getKey(), cliente.getAccessTokenValiditySeconds(),
+                    cliente.getRefreshTokenValiditySeconds());
+            refreshTokenMaximo = Math.max(refreshTokenMaximo, cliente.getRefreshTokenValiditySeconds());
+        }
+        usuariosModificados.validarTtl(refreshTokenMaximo);
 
         validarAmbiente();
     }
 
+    /**
+     * El filtro y su interceptor comparten los limitadores, se registran en dos métodos distintos
+     */
+    private synchronized LimiteTasaFilter limiteTasaFilter() {
+        if (limiteTasaFilter == null) {
+            limiteTasaFilter = new LimiteTasaFilter(metricas, limitesProperties, clientesRegistrados());
+        }
+        return limiteTasaFilter;
+    }
+
+    private String secretEncriptado(String secret) {
+        String valor = secret.startsWith(PREFIJO_BCRYPT) ? secret.substring(PREFIJO_BCRYPT.length()) : secret;
+        if (BCRYPT.matcher(valor).matches()) {
+            return valor;
+        }
+        return passwordEncoder.encode(secret);
+    }
+
+    /**
+     * Si no existe el registro de clientes en la configuración se registran los clientes
+     * que se tenían anteriormente userApp y androidapp
+     */
+    private Map<String, ClientesOAuthProperties.Cliente> clientesRegistrados() {
+        if (!clientesProperties.getClientes().isEmpty()) {
+            return clientesProperties.getClientes();
+        }
+        Map<String, ClientesOAuthProperties.Cliente> clientes = new LinkedHashMap<>();
+        clientes.put(userApp, new ClientesOAuthProperties.Cliente(keyApp));
+        clientes.put("androidapp", new ClientesOAuthProperties.Cliente(keyApp));
+        return clientes;
+    }
+
 
     /**
      * Paso 1:  Aquí se deberá de configurar el AuthenticationManager
@@ -121,6 +227,20 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
      *
      * Nota : tokenEnhancerChain permite unir la información del token con información adicional que requiere el token
      * para ello se requiere unir la informacion con setTokenEnhancers
+     *
+     * exceptionTranslator: responde 503 con Retry-After cuando el VerificadorPassword está saturado
+     *
+     * interceptor de LimiteTasaFilter: aplica los límites por cliente y username con el cliente
+     * ya autenticado y antes de validar el password del usuario
+     *
+     * UsuarioInexistenteInterceptor: rechaza los logins de usernames que se saben inexistentes
+     * con el cliente ya autenticado, sin validar con BCrypt ni llamar al microservicio-administrador
+     *
+     * tokenServices: mismas opciones que arma AuthorizationServerEndpointsConfigurer pero el grant
+     * refresh_token valida al usuario con RefreshTokenAuthenticationManager, que emite el nuevo token
+     * con los claims del refresh token sin llamar al microservicio-administrador.
+     * NOTA: el ClientDetailsService se busca hasta que se utiliza porque en este punto todavía
+     * no se asigna a endpoints
      */
     @Override
     public void configure(AuthorizationServerEndpointsConfigurer endpoints) throws Exception {
@@ -128,10 +248,25 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
         tokenEnhancerChain.setTokenEnhancers(Arrays.asList(infoAdicionalToken, accessTokenConverter()));
 
 
+        DefaultTokenServices tokenServices = new DefaultTokenServices();
+        tokenServices.setTokenStore(tokenStore());
+        tokenServices.setSupportRefreshToken(true);
+        tokenServices.setReuseRefreshToken(true);
+        tokenServices.setClientDetailsService(clientId -> endpoints.getClientDetailsService().loadClientByClientId(clientId));
+        tokenServices.setTokenEnhancer(tokenEnhancerChain);
+        tokenServices.setAuthenticationManager(new RefreshTokenAuthenticationManager(usuarioService, usuariosModificados,
+                intentosLoginTracker, metricas));
+
         endpoints.authenticationManager(authenticationManager)
                 .tokenStore(tokenStore())
                 .accessTokenConverter(accessTokenConverter())
-                .tokenEnhancer(tokenEnhancerChain);
+                .tokenEnhancer(tokenEnhancerChain)
+                .tokenServices(tokenServices)
+                .exceptionTranslator(new SaturacionExceptionTranslator());
+        if (limitesProperties.isHabilitado()) {
+            endpoints.addInterceptor(limiteTasaFilter().interceptor());
+        }
+        endpoints.addInterceptor(new UsuarioInexistenteInterceptor(usuariosInexistentes));
     }
 
     /**
@@ -150,10 +285,26 @@ public class AuthorizationServerConfig extends AuthorizationServerConfigurerAdap
      * utilizará en el servidor de recursos para validar el token que sea el correcto
      * con la misma firma y así dar  acceso a los clientes a los recursos protegidos de nuestros microservicios
      * setSigningKey- se asigna la firma
+     *
+     * Si se configuran llaves RSA en authorization.jwt.llaves el token se firma con la llave
+     * RSA activa y su kid, y los servidores de recursos validan con /.well-known/jwks.json,
+     * la firma simétrica se mantiene para los tokens sin kid durante la migración
+     *
+     * UsuarioAuthenticationConverter: al leer un token guarda su nombre, apellido y email
+     * como details del usuario para el grant refresh_token
+     * TokensRevocados: los tokens revocados se rechazan al leerlos
      */
     @Bean
-    public JwtAccessTokenConverter accessTokenConverter() {
-        JwtAccessTokenConverter tokenConverter = new JwtAccessTokenConverter();
+    public JwtKidAccessTokenConverter accessTokenConverter() {
+        JwtKidAccessTokenConverter tokenConverter = new JwtKidAccessTokenConverter(llavesJwt, llavesJwtProperties.isAceptarHmac(), tokenVerificadoCache);
+        if (llavesJwtProperties.isEncoderRapido()) {
+            tokenConverter.setEncoderRapido(new JwtEncoderRapido());
+        }
+        DefaultAccessTokenConverter defaultConverter = new DefaultAccessTokenConverter();
+        defaultConverter.setUserTokenConverter(new UsuarioAuthenticationConverter());
+        tokenConverter.setAccessTokenConverter(defaultConverter);
+        tokenConverter.setMetricas(metricas);
+        tokenConverter.setTokensRevocados(tokensRevocados);
         tokenConverter.setSigningKey(Base64.getEncoder().encodeToString(userApp.getBytes()));
         return tokenConverter;
     }
@@ -0,0 +1,123 @@
+package com.springboot.oauth.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "authorization")
+public class ClientesOAuthProperties {
+
+    /**
+     * Registro de las aplicaciones cliente que se toma del servidor de configuración
+     * (microservicio-config), el nombre de cada entrada es el clientId, por ejemplo:
+     *
+     * authorization.clientes.frontendapp.secret=12345
+     * authorization.clientes.frontendapp.scopes=read,write
+     * authorization.clientes.frontendapp.grant-types=password,refresh_token
+     * authorization.clientes.frontendapp.access-token-validity-seconds=3600
+     * authorization.clientes.frontendapp.refresh-token-validity-seconds=3600
+     * authorization.clientes.frontendapp.limites.usuario.por-minuto=10 (ver LimitesTasaProperties)
+     * authorization.clientes.adminapp.authorities=ROLE_ADMIN (ver AdministracionSecurityConfig)
+     *
+     * El secret puede estar encriptado con BCrypt para no encriptarlo al iniciar:
+     * authorization.clientes.frontendapp.secret={bcrypt}$2a$10$...
+     *
+     * NOTA: si no se registra ningún cliente se registran los clientes authorization.username
+     * y androidapp con el secret authorization.key como se realizaba anteriormente
+     */
+    private Map<String, Cliente> clientes = new LinkedHashMap<>();
+
+    public Map<String, Cliente> getClientes() {
+        return clientes;
+    }
+
+    public void setClientes(Map<String, Cliente> clientes) {
+        this.clientes = clientes;
+    }
+
+    public static class Cliente {
+
+        private String secret;
+
+        private List<String> scopes = Arrays.asList("read", "write");
+
+        private List<String> grantTypes = Arrays.asList("password", "refresh_token");
+
+        private int accessTokenValiditySeconds = 3600;
+
+        private int refreshTokenValiditySeconds = 3600;
+
+        private LimitesTasaProperties.Limites limites = new LimitesTasaProperties.Limites();
+
+        private List<String> authorities = new ArrayList<>();
+
+        public Cliente() {
+        }
+
+        public Cliente(String secret) {
+            this.secret = secret;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public List<String> getScopes() {
+            return scopes;
+        }
+
+        public void setScopes(List<String> scopes) {
+            this.scopes = scopes;
+        }
+
+        public List<String> getGrantTypes() {
+            return grantTypes;
+        }
+
+        public void setGrantTypes(List<String> grantTypes) {
+            this.grantTypes = grantTypes;
+        }
+
+        public int getAccessTokenValiditySeconds() {
+            return accessTokenValiditySeconds;
+        }
+
+        public void setAccessTokenValiditySeconds(int accessTokenValiditySeconds) {
+            this.accessTokenValiditySeconds = accessTokenValiditySeconds;
+        }
+
+        public int getRefreshTokenValiditySeconds() {
+            return refreshTokenValiditySeconds;
+        }
+
+        public void setRefreshTokenValiditySeconds(int refreshTokenValiditySeconds) {
+            this.refreshTokenValiditySeconds = refreshTokenValiditySeconds;
+        }
+
+        public LimitesTasaProperties.Limites getLimites() {
+            return limites;
+        }
+
+        public void setLimites(LimitesTasaProperties.Limites limites) {
+            this.limites = limites;
+        }
+
+        public List<String> getAuthorities() {
+            return authorities;
+        }
+
+        public void setAuthorities(List<String> authorities) {
+            this.authorities = authorities;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.springboot.oauth.security;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+
+@Configuration
+@Order(2)
+public class ClusterSecurityConfig extends WebSecurityConfigurerAdapter {
+
+    /**
+     * Configuración de seguridad del endPoint /cluster/invalidaciones, las instancias del cluster
+     * no tienen usuario ni cliente registrado, ClusterController valida el secreto compartido
+     * cluster.secreto de cada lote, por ello aquí no se autentica ni se valida CSRF
+     */
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http.antMatcher("/cluster/**")
+                .authorizeRequests().anyRequest().permitAll()
+                .and().csrf().disable()
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+    }
+}
@@ -0,0 +1,65 @@
+package com.springboot.oauth.security;
+
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+
+import java.io.Serializable;
+import java.util.Map;
+
+public final class DatosUsuarioToken implements Serializable {
+
+    public static final String NOMBRE = "nombre";
+
+    public static final String APELLIDO = "apellido";
+
+    public static final String EMAIL = "email";
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Información adicional del usuario que InfoAdicionalToken agrega al token (nombre, apellido
+     * y email), al leer un token se guarda como details de la autenticación del usuario para que
+     * el grant refresh_token pueda emitir el nuevo token sin volver a buscar al usuario
+     */
+    private final String nombre;
+
+    private final String apellido;
+
+    private final String email;
+
+    private DatosUsuarioToken(String nombre, String apellido, String email) {
+        this.nombre = nombre;
+        this.apellido = apellido;
+        this.email = email;
+    }
+
+    public static DatosUsuarioToken de(AdministradorEntity usuario) {
+        return new DatosUsuarioToken(usuario.getNombre(), usuario.getApellido(), usuario.getEmail());
+    }
+
+    /**
+     * Regresa null si el token no tiene la información adicional, por ejemplo los tokens
+     * emitidos antes de agregar InfoAdicionalToken
+     */
+    public static DatosUsuarioToken desdeClaims(Map<String, ?> claims) {
+        if (!claims.containsKey(NOMBRE) && !claims.containsKey(APELLIDO) && !claims.containsKey(EMAIL)) {
+            return null;
+        }
+        return new DatosUsuarioToken(texto(claims.get(NOMBRE)), texto(claims.get(APELLIDO)), texto(claims.get(EMAIL)));
+    }
+
+    private static String texto(Object valor) {
+        return valor != null ? valor.toString() : null;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public String getApellido() {
+        return apellido;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+}
@@ -1,8 +1,9 @@
 package com.springboot.oauth.security;
 
-import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import com.springboot.oauth.metrics.MetricasOauth;
 import com.springboot.oauth.service.IUsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
@@ -18,14 +19,37 @@ public class InfoAdicionalToken implements TokenEnhancer {
     @Autowired
     private IUsuarioService usuarioService;
 
+    @Autowired
+    private MetricasOauth metricas;
+
     @Override
     public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        return metricas.enhance(() -> agregarInfo(accessToken, authentication));
+    }
+
+    private OAuth2AccessToken agregarInfo(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
         Map<String,Object> info = new HashMap<>();
-        AdministradorEntity usuario =  usuarioService.findByUsername(authentication.getName());
-        info.put("nombre", usuario.getNombre());
-        info.put("apellido", usuario.getApellido());
-        info.put("email", usuario.getEmail());
+        DatosUsuarioToken datos = datosDelRefreshToken(authentication);
+        if (datos == null) {
+            datos = DatosUsuarioToken.de(usuarioService.findByUsername(authentication.getName()));
+        }
+        info.put(DatosUsuarioToken.NOMBRE, datos.getNombre());
+        info.put(DatosUsuarioToken.APELLIDO, datos.getApellido());
+        info.put(DatosUsuarioToken.EMAIL, datos.getEmail());
         ((DefaultOAuth2AccessToken) accessToken).setAdditionalInformation(info);
         return accessToken;
     }
+
+    /**
+     * En el grant refresh_token la autenticación viene de RefreshTokenAuthenticationManager y
+     * sus details son los claims nombre, apellido y email del refresh token, en ese caso no es
+     * necesario buscar al usuario otra vez
+     */
+    private DatosUsuarioToken datosDelRefreshToken(OAuth2Authentication authentication) {
+        Authentication usuario = authentication.getUserAuthentication();
+        if (usuario != null && usuario.getDetails() instanceof DatosUsuarioToken) {
+            return (DatosUsuarioToken) usuario.getDetails();
+        }
+        return null;
+    }
 }
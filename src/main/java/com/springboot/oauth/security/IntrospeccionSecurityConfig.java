@@ -0,0 +1,42 @@
+package com.springboot.oauth.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.client.ClientDetailsUserDetailsService;
+
+@Configuration
+@Order(1)
+public class IntrospeccionSecurityConfig extends WebSecurityConfigurerAdapter {
+
+    /**
+     * Configuración de seguridad del endPoint /oauth/introspeccion, igual que /oauth/check_token
+     * solo las aplicaciones cliente registradas pueden consultarlo autenticándose con HTTP Basic
+     * con su clientId y su secret, el secret se valida con SecretoClienteCache
+     */
+    @Autowired
+    private ClientDetailsService clientDetailsService;
+
+    @Autowired
+    private SecretoClienteCache secretoClienteCache;
+
+    @Override
+    protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+        auth.userDetailsService(new ClientDetailsUserDetailsService(clientDetailsService))
+                .passwordEncoder(secretoClienteCache.encoder());
+    }
+
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http.antMatcher("/oauth/introspeccion")
+                .authorizeRequests().anyRequest().authenticated()
+                .and().httpBasic()
+                .and().csrf().disable()
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+    }
+}
@@ -0,0 +1,399 @@
+package com.springboot.oauth.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.UserAuthenticationConverter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class JwtEncoderRapido {
+
+    /**
+     * Encoder del JWT que escribe los claims conocidos del token (user_name, authorities, scope,
+     * exp, jti, client_id y la información adicional nombre, apellido, email) directamente como
+     * JSON UTF-8 en un buffer reutilizable por hilo, sin construir los HashMap intermedios ni pasar
+     * por la serialización genérica de Jackson, el header de cada llave se calcula una sola vez y
+     * las instancias de Mac/Signature se reutilizan por hilo.
+     *
+     * Los claims son los mismos que genera DefaultAccessTokenConverter.convertAccessToken con su
+     * configuración por defecto y la firma es la misma (HS256 o RS256), por lo que los servidores
+     * de recursos validan el token igual que antes, solo puede cambiar el orden de los claims.
+     *
+     * NOTA: cuando la información adicional tiene claims reservados o valores que no son texto,
+     * números, booleanos o listas de texto soporta regresa false y se utiliza el encoder original
+     */
+    private static final Set<String> RESERVADOS = new HashSet<>(Arrays.asList(
+            UserAuthenticationConverter.USERNAME, AccessTokenConverter.AUTHORITIES, AccessTokenConverter.SCOPE,
+            AccessTokenConverter.EXP, AccessTokenConverter.CLIENT_ID, AccessTokenConverter.AUD,
+            AccessTokenConverter.GRANT_TYPE));
+
+    private static final byte[] BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    public boolean soporta(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        for (Map.Entry<String, Object> entry : accessToken.getAdditionalInformation().entrySet()) {
+            if (RESERVADOS.contains(entry.getKey()) || !valorSoportado(entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication, Firmante firmante) {
+        Buffers buffers = BUFFERS.get();
+        Bytes json = buffers.json;
+        json.reset();
+        escribirClaims(json, accessToken, authentication);
+
+        Bytes token = buffers.token;
+        token.reset();
+        token.write(firmante.header, 0, firmante.header.length);
+        token.write('.');
+        base64Url(json.datos, json.longitud, token);
+        byte[] firma = firmante.firmar(token.datos, token.longitud);
+        token.write('.');
+        base64Url(firma, firma.length, token);
+        return new String(token.datos, 0, token.longitud, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Mismo orden de reglas que DefaultAccessTokenConverter.convertAccessToken
+     */
+    private void escribirClaims(Bytes json, OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        OAuth2Request clientToken = authentication.getOAuth2Request();
+        Map<String, Object> info = accessToken.getAdditionalInformation();
+        json.write('{');
+        boolean primero = true;
+        if (!authentication.isClientOnly()) {
+            Authentication user = authentication.getUserAuthentication();
+            primero = campo(json, UserAuthenticationConverter.USERNAME, primero);
+            texto(json, user.getName());
+            primero = authorities(json, user.getAuthorities(), primero);
+        } else {
+            primero = authorities(json, clientToken.getAuthorities(), primero);
+        }
+        if (accessToken.getScope() != null) {
+            primero = campo(json, AccessTokenConverter.SCOPE, primero);
+            lista(json, accessToken.getScope());
+        }
+        if (accessToken.getExpiration() != null) {
+            primero = campo(json, AccessTokenConverter.EXP, primero);
+            numero(json, accessToken.getExpiration().getTime() / 1000);
+        }
+        for (Map.Entry<String, Object> entry : info.entrySet()) {
+            primero = campo(json, entry.getKey(), primero);
+            valor(json, entry.getValue());
+        }
+        primero = campo(json, AccessTokenConverter.CLIENT_ID, primero);
+        texto(json, clientToken.getClientId());
+        if (clientToken.getResourceIds() != null && !clientToken.getResourceIds().isEmpty()) {
+            campo(json, AccessTokenConverter.AUD, primero);
+            lista(json, clientToken.getResourceIds());
+        }
+        json.write('}');
+    }
+
+    private static boolean authorities(Bytes json, Collection<? extends GrantedAuthority> authorities, boolean primero) {
+        if (authorities == null || authorities.isEmpty()) {
+            return primero;
+        }
+        campo(json, AccessTokenConverter.AUTHORITIES, primero);
+        json.write('[');
+        int escritas = 0;
+        int indice = 0;
+        for (GrantedAuthority authority : authorities) {
+            if (!repetida(authorities, authority.getAuthority(), indice++)) {
+                if (escritas++ > 0) {
+                    json.write(',');
+                }
+                texto(json, authority.getAuthority());
+            }
+        }
+        json.write(']');
+        return false;
+    }
+
+    /**
+     * AuthorityUtils.authorityListToSet elimina los roles repetidos, la lista de roles es
+     * pequeña por lo que se revisa sin construir un Set
+     */
+    private static boolean repetida(Collection<? extends GrantedAuthority> authorities, String authority, int indice) {
+        int i = 0;
+        for (GrantedAuthority anterior : authorities) {
+            if (i++ >= indice) {
+                return false;
+            }
+            if (authority == null ? anterior.getAuthority() == null : authority.equals(anterior.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean campo(Bytes json, String nombre, boolean primero) {
+        if (!primero) {
+            json.write(',');
+        }
+        texto(json, nombre);
+        json.write(':');
+        return false;
+    }
+
+    private static boolean valorSoportado(Object valor) {
+        if (valor == null || valor instanceof String || valor instanceof Number || valor instanceof Boolean) {
+            return true;
+        }
+        if (valor instanceof Collection) {
+            for (Object elemento : (Collection<?>) valor) {
+                if (!(elemento instanceof String)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static void valor(Bytes json, Object valor) {
+        if (valor == null) {
+            json.ascii("null");
+        } else if (valor instanceof String) {
+            texto(json, (String) valor);
+        } else if (valor instanceof Long || valor instanceof Integer || valor instanceof Short || valor instanceof Byte) {
+            numero(json, ((Number) valor).longValue());
+        } else if (valor instanceof Number || valor instanceof Boolean) {
+            json.ascii(valor.toString());
+        } else {
+            lista(json, (Collection<?>) valor);
+        }
+    }
+
+    private static void lista(Bytes json, Collection<?> valores) {
+        json.write('[');
+        boolean primero = true;
+        for (Object valor : valores) {
+            if (!primero) {
+                json.write(',');
+            }
+            texto(json, (String) valor);
+            primero = false;
+        }
+        json.write(']');
+    }
+
+    private static void numero(Bytes json, long valor) {
+        if (valor == Long.MIN_VALUE) {
+            json.ascii(Long.toString(valor));
+            return;
+        }
+        if (valor < 0) {
+            json.write('-');
+            valor = -valor;
+        }
+        json.asegurar(20);
+        int inicio = json.longitud;
+        do {
+            json.datos[json.longitud++] = (byte) ('0' + (valor % 10));
+            valor /= 10;
+        } while (valor > 0);
+        for (int i = inicio, j = json.longitud - 1; i < j; i++, j--) {
+            byte temporal = json.datos[i];
+            json.datos[i] = json.datos[j];
+            json.datos[j] = temporal;
+        }
+    }
+
+    private static void texto(Bytes json, String texto) {
+        if (texto == null) {
+            json.ascii("null");
+            return;
+        }
+        json.write('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.write('\\');
+                json.write(c);
+            } else if (c < 0x20) {
+                escaparControl(json, c);
+            } else if (c < 0x80) {
+                json.write(c);
+            } else if (c < 0x800) {
+                json.write(0xC0 | (c >> 6));
+                json.write(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length() && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, texto.charAt(++i));
+                json.write(0xF0 | (codePoint >> 18));
+                json.write(0x80 | ((codePoint >> 12) & 0x3F));
+                json.write(0x80 | ((codePoint >> 6) & 0x3F));
+                json.write(0x80 | (codePoint & 0x3F));
+            } else {
+                json.write(0xE0 | (c >> 12));
+                json.write(0x80 | ((c >> 6) & 0x3F));
+                json.write(0x80 | (c & 0x3F));
+            }
+        }
+        json.write('"');
+    }
+
+    private static void escaparControl(Bytes json, char c) {
+        json.write('\\');
+        switch (c) {
+            case '\n': json.write('n'); break;
+            case '\r': json.write('r'); break;
+            case '\t': json.write('t'); break;
+            case '\b': json.write('b'); break;
+            case '\f': json.write('f'); break;
+            default:
+                json.ascii("u00");
+                json.write(Character.forDigit(c >> 4, 16));
+                json.write(Character.forDigit(c & 0xF, 16));
+        }
+    }
+
+    private static void base64Url(byte[] datos, int longitud, Bytes destino) {
+        destino.asegurar((longitud + 2) / 3 * 4);
+        byte[] salida = destino.datos;
+        int posicion = destino.longitud;
+        int i = 0;
+        for (; i + 2 < longitud; i += 3) {
+            int bloque = (datos[i] & 0xFF) << 16 | (datos[i + 1] & 0xFF) << 8 | (datos[i + 2] & 0xFF);
+            salida[posicion++] = BASE64_URL[bloque >>> 18];
+            salida[posicion++] = BASE64_URL[(bloque >>> 12) & 0x3F];
+            salida[posicion++] = BASE64_URL[(bloque >>> 6) & 0x3F];
+            salida[posicion++] = BASE64_URL[bloque & 0x3F];
+        }
+        int restantes = longitud - i;
+        if (restantes == 1) {
+            int bloque = (datos[i] & 0xFF) << 16;
+            salida[posicion++] = BASE64_URL[bloque >>> 18];
+            salida[posicion++] = BASE64_URL[(bloque >>> 12) & 0x3F];
+        } else if (restantes == 2) {
+            int bloque = (datos[i] & 0xFF) << 16 | (datos[i + 1] & 0xFF) << 8;
+            salida[posicion++] = BASE64_URL[bloque >>> 18];
+            salida[posicion++] = BASE64_URL[(bloque >>> 12) & 0x3F];
+            salida[posicion++] = BASE64_URL[(bloque >>> 6) & 0x3F];
+        }
+        destino.longitud = posicion;
+    }
+
+    /**
+     * Firma el header y los claims con una llave, el header ya codificado en base64url se
+     * calcula una sola vez y las instancias de Mac o Signature se reutilizan por hilo
+     */
+    public abstract static class Firmante {
+
+        private final byte[] header;
+
+        protected Firmante(String headerJson) {
+            byte[] json = headerJson.getBytes(StandardCharsets.UTF_8);
+            Bytes codificado = new Bytes();
+            base64Url(json, json.length, codificado);
+            this.header = Arrays.copyOf(codificado.datos, codificado.longitud);
+        }
+
+        protected abstract byte[] firmar(byte[] datos, int longitud);
+
+        public static Firmante hmac(String signingKey) {
+            SecretKeySpec llave = new SecretKeySpec(signingKey.getBytes(StandardCharsets.UTF_8), "HMACSHA256");
+            ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+                try {
+                    Mac mac = Mac.getInstance("HMACSHA256");
+                    mac.init(llave);
+                    return mac;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            return new Firmante("{\"alg\":\"HS256\",\"typ\":\"JWT\"}") {
+                @Override
+                protected byte[] firmar(byte[] datos, int longitud) {
+                    Mac mac = macs.get();
+                    mac.update(datos, 0, longitud);
+                    return mac.doFinal();
+                }
+            };
+        }
+
+        public static Firmante rsa(String kid, PrivateKey llave) {
+            ThreadLocal<Signature> firmas = ThreadLocal.withInitial(() -> {
+                try {
+                    Signature signature = Signature.getInstance("SHA256withRSA");
+                    signature.initSign(llave);
+                    return signature;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Bytes kidJson = new Bytes();
+            texto(kidJson, kid);
+            return new Firmante("{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":"
+                    + new String(kidJson.datos, 0, kidJson.longitud, StandardCharsets.UTF_8) + "}") {
+                @Override
+                protected byte[] firmar(byte[] datos, int longitud) {
+                    Signature signature = firmas.get();
+                    try {
+                        signature.update(datos, 0, longitud);
+                        return signature.sign();
+                    } catch (GeneralSecurityException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+    }
+
+    private static final class Buffers {
+        private final Bytes json = new Bytes();
+        private final Bytes token = new Bytes();
+    }
+
+    private static final class Bytes {
+        private byte[] datos = new byte[1024];
+        private int longitud;
+
+        private void reset() {
+            longitud = 0;
+        }
+
+        private void asegurar(int adicionales) {
+            if (longitud + adicionales > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, longitud + adicionales));
+            }
+        }
+
+        private void write(int b) {
+            asegurar(1);
+            datos[longitud++] = (byte) b;
+        }
+
+        private void write(byte[] origen, int desde, int cantidad) {
+            asegurar(cantidad);
+            System.arraycopy(origen, desde, datos, longitud, cantidad);
+            longitud += cantidad;
+        }
+
+        private void ascii(String texto) {
+            asegurar(texto.length());
+            for (int i = 0; i < texto.length(); i++) {
+                datos[longitud++] = (byte) texto.charAt(i);
+            }
+        }
+    }
+}
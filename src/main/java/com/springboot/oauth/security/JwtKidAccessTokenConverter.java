@@ -0,0 +1,195 @@
+package com.springboot.oauth.security;
+
+import com.springboot.oauth.metrics.MetricasOauth;
+import com.springboot.oauth.service.TokensRevocados;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JwtKidAccessTokenConverter extends JwtAccessTokenConverter {
+
+    /**
+     * JwtAccessTokenConverter que firma el token con la llave RSA activa de LlavesJwt y agrega
+     * el kid al header del JWT, al validar un token se busca la llave por su kid, de esta forma
+     * los servidores de recursos pueden validar el token con las llaves públicas del JWKS sin
+     * compartir el secreto ni llamar a /oauth/check_token.
+     *
+     * Si no existen llaves RSA configuradas se firma y valida con la llave simétrica (HMAC)
+     * que se asigna con setSigningKey como se realizaba anteriormente
+     *
+     * Los tokens que ya se validaron se guardan en TokenVerificadoCache hasta su exp
+     *
+     * Si se asigna un JwtEncoderRapido los tokens se escriben y firman con él, ver JwtEncoderRapido
+     *
+     * Si se asigna TokensRevocados cada token que se lee (check_token, introspección y refresh_token)
+     * se rechaza si fue revocado, la consulta se realiza después de la cache por que un token
+     * se puede revocar cuando ya está en TokenVerificadoCache
+     */
+    private final LlavesJwt llavesJwt;
+
+    private final boolean aceptarHmac;
+
+    private final TokenVerificadoCache tokensVerificados;
+
+    private final JsonParser parser = JsonParserFactory.create();
+
+    private JwtEncoderRapido encoderRapido;
+
+    private JwtEncoderRapido.Firmante firmanteHmac;
+
+    private MetricasOauth metricas = MetricasOauth.NINGUNA;
+
+    private TokensRevocados tokensRevocados;
+
+    public JwtKidAccessTokenConverter(LlavesJwt llavesJwt, boolean aceptarHmac, TokenVerificadoCache tokensVerificados) {
+        this.llavesJwt = llavesJwt;
+        this.aceptarHmac = aceptarHmac;
+        this.tokensVerificados = tokensVerificados;
+    }
+
+    /**
+     * JwtEncoderRapido solo escribe los claims de DefaultAccessTokenConverter con su configuración
+     * por defecto, si se asigna otro AccessTokenConverter se deja de utilizar
+     */
+    public void setEncoderRapido(JwtEncoderRapido encoderRapido) {
+        this.encoderRapido = encoderRapido;
+    }
+
+    /**
+     * El tiempo de serializar y firmar cada token se registra en oauth.jwt.firma
+     */
+    public void setMetricas(MetricasOauth metricas) {
+        this.metricas = metricas;
+    }
+
+    public void setTokensRevocados(TokensRevocados tokensRevocados) {
+        this.tokensRevocados = tokensRevocados;
+    }
+
+    @Override
+    public void setSigningKey(String key) {
+        super.setSigningKey(key);
+        this.firmanteHmac = super.isPublic() ? null : JwtEncoderRapido.Firmante.hmac(key);
+    }
+
+    @Override
+    protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        long inicio = System.nanoTime();
+        LlavesJwt.LlaveFirma llave = llavesJwt.activa();
+        String algoritmo = llave != null ? "RS256" : "HS256";
+        if (usarEncoderRapido(accessToken, authentication)) {
+            JwtEncoderRapido.Firmante firmante = llave != null ? llave.getFirmante() : firmanteHmac;
+            if (firmante != null) {
+                String token = encoderRapido.encode(accessToken, authentication, firmante);
+                metricas.firma(algoritmo, "rapido", System.nanoTime() - inicio);
+                return token;
+            }
+        }
+        String token = encodeGenerico(llave, accessToken, authentication);
+        metricas.firma(algoritmo, "generico", System.nanoTime() - inicio);
+        return token;
+    }
+
+    private String encodeGenerico(LlavesJwt.LlaveFirma llave, OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        if (llave == null) {
+            return super.encode(accessToken, authentication);
+        }
+        String content;
+        try {
+            content = parser.formatMap(getAccessTokenConverter().convertAccessToken(accessToken, authentication));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot convert access token to JSON", e);
+        }
+        return JwtHelper.encode(content, llave.getSigner(), llave.getHeaders()).getEncoded();
+    }
+
+    private boolean usarEncoderRapido(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        return encoderRapido != null
+                && getAccessTokenConverter().getClass() == DefaultAccessTokenConverter.class
+                && encoderRapido.soporta(accessToken, authentication);
+    }
+
+    @Override
+    protected Map<String, Object> decode(String token) {
+        Map<String, Object> claims = tokensVerificados.obtener(token, this::verificar);
+        if (tokensRevocados != null) {
+            String motivo = tokensRevocados.revocado(claims);
+            if (motivo != null) {
+                metricas.tokenRevocado(motivo);
+                throw new InvalidTokenException("Token was revoked");
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Regresa los claims del token validando su firma, su exp y que no esté revocado
+     */
+    public Map<String, Object> leerClaims(String token) {
+        return decode(token);
+    }
+
+    private Map<String, Object> verificar(String token) {
+        if (!llavesJwt.habilitado()) {
+            return super.decode(token);
+        }
+        String kid;
+        try {
+            kid = JwtHelper.headers(token).get("kid");
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+        if (kid == null) {
+            if (aceptarHmac) {
+                return super.decode(token);
+            }
+            throw new InvalidTokenException("El token no tiene kid");
+        }
+        LlavesJwt.LlaveFirma llave = llavesJwt.buscar(kid);
+        if (llave == null) {
+            throw new InvalidTokenException("La llave del token no existe o ya fue retirada: " + kid);
+        }
+        try {
+            Jwt jwt = JwtHelper.decodeAndVerify(token, llave.getVerificador());
+            Map<String, Object> claims = parser.parseMap(jwt.getClaims());
+            if (claims.get(AccessTokenConverter.EXP) instanceof Integer) {
+                claims.put(AccessTokenConverter.EXP, Long.valueOf((Integer) claims.get(AccessTokenConverter.EXP)));
+            }
+            getJwtClaimsSetVerifier().verify(claims);
+            return claims;
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    /**
+     * /oauth/token_key regresa la llave pública RSA activa, al ser pública no requiere autenticación
+     */
+    @Override
+    public Map<String, String> getKey() {
+        LlavesJwt.LlaveFirma llave = llavesJwt.activa();
+        if (llave == null) {
+            return super.getKey();
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("alg", llave.getSigner().algorithm());
+        result.put("value", llave.pem());
+        result.put("kid", llave.getKid());
+        return result;
+    }
+
+    @Override
+    public boolean isPublic() {
+        return llavesJwt.habilitado() || super.isPublic();
+    }
+}
@@ -0,0 +1,83 @@
+package com.springboot.oauth.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LimitadorTasa {
+
+    /**
+     * Token bucket por llave implementado con GCRA (generic cell rate algorithm), en lugar de
+     * guardar los tokens disponibles y la hora de la última recarga cada llave guarda un solo
+     * valor, la hora teórica de la siguiente petición (TAT), que se actualiza con compareAndSet
+     * sobre un AtomicLong sin bloqueos.
+     *
+     * Una petición se permite si TAT - ahora no supera la tolerancia de la ráfaga, al permitirse
+     * TAT avanza un intervalo (60 s / por-minuto), si se rechaza regresa el tiempo que falta para
+     * que se permita la siguiente.
+     *
+     * Las llaves se guardan en Caffeine y se olvidan después de inactivoSegundos sin peticiones,
+     * una llave olvidada empieza otra vez con la ráfaga completa
+     */
+    private final Cache<String, AtomicLong> llaves;
+
+    private final long origen = System.nanoTime();
+
+    public LimitadorTasa(long maximo, long inactivoSegundos) {
+        this.llaves = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterAccess(Duration.ofSeconds(inactivoSegundos))
+                .build();
+    }
+
+    /**
+     * Regresa 0 si la petición se permite o los nanosegundos que faltan para que se permita
+     */
+    public long intentar(String llave, Tasa tasa) {
+        return intentar(llave, tasa, System.nanoTime() - origen);
+    }
+
+    long intentar(String llave, Tasa tasa, long ahora) {
+        AtomicLong tat = llaves.get(llave, k -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long actual = tat.get();
+            long inicio = Math.max(actual, ahora);
+            long espera = inicio - ahora - tasa.tolerancia;
+            if (espera > 0) {
+                return espera;
+            }
+            if (tat.compareAndSet(actual, inicio + tasa.intervalo)) {
+                return 0;
+            }
+        }
+    }
+
+    public long getLlaves() {
+        return llaves.estimatedSize();
+    }
+
+    /**
+     * intervalo = nanosegundos entre peticiones
+     * tolerancia = nanosegundos que TAT puede adelantarse a la hora actual, permite una ráfaga
+     * de peticiones seguidas
+     */
+    public static final class Tasa {
+
+        private final long intervalo;
+
+        private final long tolerancia;
+
+        private Tasa(long intervalo, long tolerancia) {
+            this.intervalo = intervalo;
+            this.tolerancia = tolerancia;
+        }
+
+        public static Tasa de(LimitesTasaProperties.Limite limite) {
+            long intervalo = TimeUnit.MINUTES.toNanos(1) / Math.max(1, limite.getPorMinuto());
+            return new Tasa(intervalo, intervalo * (Math.max(1, limite.getRafaga()) - 1));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.springboot.oauth.security;
+
+import com.springboot.oauth.metrics.MetricasOauth;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class LimiteTasaFilter extends OncePerRequestFilter {
+
+    private static final String TOKEN = "/oauth/token";
+
+    private static final byte[] RESPUESTA = ("{\"error\":\"too_many_requests\","
+            + "\"error_description\":\"Se superó el límite de peticiones, intente más tarde\"}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Filtro que se registra delante del endPoint /oauth/token después de MetricasGrantFilter,
+     * limita las peticiones por dirección remota, por client_id y por username (grant password)
+     * con LimitadorTasa, una petición que supera cualquiera de los límites se responde con 429 y
+     * el header Retry-After antes de validar con BCrypt o llamar al microservicio-administrador.
+     *
+     * El límite por dirección remota se aplica aquí antes de autenticar al cliente, los límites
+     * por client_id y por username se aplican en interceptor() que AuthorizationServerConfig
+     * registra en el TokenEndpoint, ahí el cliente ya se autenticó y un client_id con un secret
+     * incorrecto no consume el límite del cliente real ni el de sus usuarios.
+     *
+     * El límite por dirección remota de este filtro siempre es el general (authorization.limites.ip),
+     * el client_id de la petición todavía no está autenticado y un client_id falso no puede
+     * subir el límite. El límite ip propio de un cliente solo puede ser más estricto, se aplica
+     * en interceptor() con la llave client_id + dirección remota.
+     *
+     * La dirección remota es la del cliente aunque la petición llegue por el gateway, Tomcat la
+     * toma del header X-Forwarded-For cuando la petición viene de un proxy confiable
+     * (server.forward-headers-strategy y server.tomcat.remoteip.internal-proxies)
+     *
+     * Los límites de cada cliente registrado se calculan al crear el filtro con LimitesTasaProperties
+     * y los límites propios del cliente
+     *
+     * NOTA: no se registra como @Component para que spring boot no lo agregue a todas las peticiones
+     */
+    private final MetricasOauth metricas;
+
+    private final LimitadorTasa porIp;
+
+    private final LimitadorTasa porCliente;
+
+    private final LimitadorTasa porUsuario;
+
+    private final LimitadorTasa porIpCliente;
+
+    private final Map<String, Tasas> tasasClientes = new HashMap<>();
+
+    private final Tasas tasasGenerales;
+
+    private final LimitadorTasa.Tasa tasaIp;
+
+    public LimiteTasaFilter(MetricasOauth metricas, LimitesTasaProperties properties,
+                            Map<String, ClientesOAuthProperties.Cliente> clientes) {
+        this.metricas = metricas;
+        this.porIp = new LimitadorTasa(properties.getMaximo(), properties.getInactivoSegundos());
+        this.porCliente = new LimitadorTasa(clientes.size() + 1, properties.getInactivoSegundos());
+        this.porUsuario = new LimitadorTasa(properties.getMaximo(), properties.getInactivoSegundos());
+        this.porIpCliente = new LimitadorTasa(properties.getMaximo(), properties.getInactivoSegundos());
+        this.tasasGenerales = new Tasas(properties, new LimitesTasaProperties.Limites());
+        this.tasaIp = LimitadorTasa.Tasa.de(properties.getIp());
+        for (Map.Entry<String, ClientesOAuthProperties.Cliente> cliente : clientes.entrySet()) {
+            tasasClientes.put(cliente.getKey(), new Tasas(properties, cliente.getValue().getLimites()));
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !TOKEN.equals(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long espera = porIp.intentar(request.getRemoteAddr(), tasaIp);
+        if (espera > 0) {
+            rechazar(response, "ip", espera);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Interceptor del TokenEndpoint que aplica los límites por client_id, por dirección remota
+     * del cliente (solo si el cliente tiene su propio límite ip) y por username, se ejecuta
+     * después de autenticar al cliente y antes de autenticar al usuario
+     */
+    public HandlerInterceptor interceptor() {
+        return new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+                Authentication cliente = SecurityContextHolder.getContext().getAuthentication();
+                if (!TOKEN.equals(request.getServletPath()) || cliente == null || !cliente.isAuthenticated()) {
+                    return true;
+                }
+                Tasas tasas = tasas(cliente.getName());
+                long espera = porCliente.intentar(cliente.getName(), tasas.cliente);
+                String tipo = "cliente";
+                if (espera == 0 && tasas.ipPropia != null) {
+                    espera = porIpCliente.intentar(cliente.getName() + " " + request.getRemoteAddr(), tasas.ipPropia);
+                    tipo = "ip";
+                }
+                String username = request.getParameter("username");
+                if (espera == 0 && username != null && "password".equals(request.getParameter("grant_type"))) {
+                    espera = porUsuario.intentar(username, tasas.usuario);
+                    tipo = "usuario";
+                }
+                if (espera > 0) {
+                    rechazar(response, tipo, espera);
+                    return false;
+                }
+                return true;
+            }
+        };
+    }
+
+    private Tasas tasas(String clientId) {
+        Tasas tasas = clientId != null ? tasasClientes.get(clientId) : null;
+        return tasas != null ? tasas : tasasGenerales;
+    }
+
+    private void rechazar(HttpServletResponse response, String tipo, long espera) throws IOException {
+        metricas.limiteExcedido(tipo);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+        response.setHeader(HttpHeaders.PRAGMA, "no-cache");
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (espera + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1))));
+        response.getOutputStream().write(RESPUESTA);
+    }
+
+    private static final class Tasas {
+        private final LimitadorTasa.Tasa usuario;
+        private final LimitadorTasa.Tasa cliente;
+        private final LimitadorTasa.Tasa ipPropia;
+
+        private Tasas(LimitesTasaProperties generales, LimitesTasaProperties.Limites propios) {
+            this.usuario = LimitadorTasa.Tasa.de(propios.getUsuario() != null ? propios.getUsuario() : generales.getUsuario());
+            this.ipPropia = propios.getIp() != null ? LimitadorTasa.Tasa.de(propios.getIp()) : null;
+            this.cliente = LimitadorTasa.Tasa.de(propios.getCliente() != null ? propios.getCliente() : generales.getCliente());
+        }
+    }
+}
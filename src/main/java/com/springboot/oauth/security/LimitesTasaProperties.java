@@ -0,0 +1,163 @@
+package com.springboot.oauth.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "authorization.limites")
+public class LimitesTasaProperties {
+
+    /**
+     * Límites de peticiones a /oauth/token que aplica LimiteTasaFilter antes de autenticar al
+     * cliente y al usuario, cada límite es un número de peticiones por minuto y una ráfaga de
+     * peticiones que se permiten seguidas, por ejemplo:
+     *
+     * authorization.limites.usuario.por-minuto=10
+     * authorization.limites.usuario.rafaga=5
+     *
+     * usuario = por username del grant password
+     * ip = por dirección remota de la petición, detrás del gateway se toma de X-Forwarded-For
+     * (ver server.tomcat.remoteip.internal-proxies)
+     * cliente = por client_id, solo cuentan las peticiones con el secret correcto del cliente
+     *
+     * Cada cliente puede tener sus propios límites en su registro de ClientesOAuthProperties,
+     * los que no se asignan se toman de aquí:
+     *
+     * authorization.clientes.androidapp.limites.usuario.por-minuto=20
+     *
+     * NOTA: el límite ip se aplica antes de autenticar al cliente y siempre es el general, el
+     * límite ip propio de un cliente se aplica además con el cliente autenticado y por ello solo
+     * puede ser más estricto que el general
+     *
+     * habilitado = false desactiva los límites
+     * maximo = número máximo de llaves (usernames, ips, clientes) que se recuerdan por tipo
+     * inactivo-segundos = tiempo sin peticiones para olvidar una llave, debe ser mayor al tiempo
+     * que tarda en recuperarse la ráfaga completa del límite más lento
+     */
+    private boolean habilitado = true;
+
+    private long maximo = 100000;
+
+    private long inactivoSegundos = 600;
+
+    private Limite usuario = new Limite(10, 5);
+
+    private Limite ip = new Limite(120, 60);
+
+    private Limite cliente = new Limite(6000, 1000);
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    public void setHabilitado(boolean habilitado) {
+        this.habilitado = habilitado;
+    }
+
+    public long getMaximo() {
+        return maximo;
+    }
+
+    public void setMaximo(long maximo) {
+        this.maximo = maximo;
+    }
+
+    public long getInactivoSegundos() {
+        return inactivoSegundos;
+    }
+
+    public void setInactivoSegundos(long inactivoSegundos) {
+        this.inactivoSegundos = inactivoSegundos;
+    }
+
+    public Limite getUsuario() {
+        return usuario;
+    }
+
+    public void setUsuario(Limite usuario) {
+        this.usuario = usuario;
+    }
+
+    public Limite getIp() {
+        return ip;
+    }
+
+    public void setIp(Limite ip) {
+        this.ip = ip;
+    }
+
+    public Limite getCliente() {
+        return cliente;
+    }
+
+    public void setCliente(Limite cliente) {
+        this.cliente = cliente;
+    }
+
+    public static class Limite {
+
+        private int porMinuto;
+
+        private int rafaga;
+
+        public Limite() {
+        }
+
+        public Limite(int porMinuto, int rafaga) {
+            this.porMinuto = porMinuto;
+            this.rafaga = rafaga;
+        }
+
+        public int getPorMinuto() {
+            return porMinuto;
+        }
+
+        public void setPorMinuto(int porMinuto) {
+            this.porMinuto = porMinuto;
+        }
+
+        public int getRafaga() {
+            return rafaga;
+        }
+
+        public void setRafaga(int rafaga) {
+            this.rafaga = rafaga;
+        }
+    }
+
+    /**
+     * Límites propios de un cliente, los que quedan en null se toman de los límites generales
+     */
+    public static class Limites {
+
+        private Limite usuario;
+
+        private Limite ip;
+
+        private Limite cliente;
+
+        public Limite getUsuario() {
+            return usuario;
+        }
+
+        public void setUsuario(Limite usuario) {
+            this.usuario = usuario;
+        }
+
+        public Limite getIp() {
+            return ip;
+        }
+
+        public void setIp(Limite ip) {
+            this.ip = ip;
+        }
+
+        public Limite getCliente() {
+            return cliente;
+        }
+
+        public void setCliente(Limite cliente) {
+            this.cliente = cliente;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.springboot.oauth.security;
+
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.jwt.crypto.sign.Signer;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class LlavesJwt {
+
+    /**
+     * Esta clase carga las llaves RSA de LlavesJwtProperties y decide con que llave se firma
+     * el token en cada momento (la más reciente ya activa) y que llaves se siguen aceptando
+     * y publicando en el JWKS, una llave reemplazada se retira cuando pasa el tiempo de
+     * solapamiento desde que se activó la llave que la reemplazó
+     *
+     * NOTA: si hay llaves configuradas y ninguna puede firmar (sin llave privada, todas futuras
+     * o retiradas) la aplicación no inicia, y si esto sucede después activa() lanza una excepción
+     * en lugar de firmar con una llave retirada que los servidores de recursos ya no aceptan
+     */
+    private final List<LlaveFirma> llaves;
+
+    public LlavesJwt(LlavesJwtProperties properties) {
+        List<LlaveFirma> cargadas = new ArrayList<>();
+        for (LlavesJwtProperties.Llave llave : properties.getLlaves()) {
+            cargadas.add(cargar(llave));
+        }
+        cargadas.sort(Comparator.comparing(LlaveFirma::getActivaDesde));
+        for (int i = 0; i < cargadas.size() - 1; i++) {
+            cargadas.get(i).retiradaEn = cargadas.get(i + 1).activaDesde.plusSeconds(properties.getSolapamientoSegundos());
+        }
+        this.llaves = Collections.unmodifiableList(cargadas);
+        if (habilitado()) {
+            activa();
+        }
+    }
+
+    public boolean habilitado() {
+        return !llaves.isEmpty();
+    }
+
+    /**
+     * Llave con la que se firman los tokens, la más reciente que ya está activa, no se ha retirado
+     * y tiene llave privada, regresa null solo si no hay llaves configuradas (firma HMAC)
+     */
+    public LlaveFirma activa() {
+        Instant ahora = Instant.now();
+        LlaveFirma activa = null;
+        for (LlaveFirma llave : llaves) {
+            if (llave.signer != null && !llave.activaDesde.isAfter(ahora) && llave.vigente(ahora)) {
+                activa = llave;
+            }
+        }
+        if (activa == null && habilitado()) {
+            throw new IllegalStateException("No existe una llave JWT activa y vigente con llave privada para firmar el token");
+        }
+        return activa;
+    }
+
+    /**
+     * Regresa la llave con el kid indicado si todavía no se ha retirado
+     */
+    public LlaveFirma buscar(String kid) {
+        Instant ahora = Instant.now();
+        for (LlaveFirma llave : llaves) {
+            if (llave.kid.equals(kid) && llave.vigente(ahora)) {
+                return llave;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Llaves que se publican en el JWKS, incluye las llaves futuras para que los servidores
+     * de recursos las conozcan antes de que se empiecen a usar
+     */
+    public List<LlaveFirma> publicadas() {
+        Instant ahora = Instant.now();
+        List<LlaveFirma> publicadas = new ArrayList<>();
+        for (LlaveFirma llave : llaves) {
+            if (llave.vigente(ahora)) {
+                publicadas.add(llave);
+            }
+        }
+        return publicadas;
+    }
+
+    private static LlaveFirma cargar(LlavesJwtProperties.Llave llave) {
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            RSAPrivateKey privada = null;
+            RSAPublicKey publica = null;
+            if (llave.getPrivateKey() != null && !llave.getPrivateKey().trim().isEmpty()) {
+                privada = (RSAPrivateKey) keyFactory.generatePrivate(new PKCS8EncodedKeySpec(pem(llave.getPrivateKey())));
+            }
+            if (llave.getPublicKey() != null && !llave.getPublicKey().trim().isEmpty()) {
+                publica = (RSAPublicKey) keyFactory.generatePublic(new X509EncodedKeySpec(pem(llave.getPublicKey())));
+            } else if (privada instanceof RSAPrivateCrtKey) {
+                RSAPrivateCrtKey crt = (RSAPrivateCrtKey) privada;
+                publica = (RSAPublicKey) keyFactory.generatePublic(new RSAPublicKeySpec(crt.getModulus(), crt.getPublicExponent()));
+            }
+            if (publica == null) {
+                throw new IllegalStateException("La llave JWT " + llave.getKid() + " no tiene llave pública");
+            }
+            String kid = llave.getKid() != null ? llave.getKid() : huella(publica);
+            Instant activaDesde = llave.getActivaDesde() != null ? Instant.parse(llave.getActivaDesde()) : Instant.EPOCH;
+            return new LlaveFirma(kid, publica, privada, activaDesde);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo cargar la llave JWT " + llave.getKid(), e);
+        }
+    }
+
+    private static byte[] pem(String pem) {
+        String contenido = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        return Base64.getDecoder().decode(contenido);
+    }
+
+    private static String huella(RSAPublicKey publica) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(publica.getEncoded());
+        return base64Url(Arrays.copyOf(digest, 12));
+    }
+
+    static String base64Url(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String base64Url(BigInteger valor) {
+        byte[] bytes = valor.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return base64Url(bytes);
+    }
+
+    public static final class LlaveFirma {
+
+        private final String kid;
+
+        private final RSAPublicKey publica;
+
+        private final Signer signer;
+
+        private final SignatureVerifier verificador;
+
+        private final Instant activaDesde;
+
+        private final Map<String, String> headers;
+
+        private final JwtEncoderRapido.Firmante firmante;
+
+        private volatile Instant retiradaEn;
+
+        private LlaveFirma(String kid, RSAPublicKey publica, RSAPrivateKey privada, Instant activaDesde) {
+            this.kid = kid;
+            this.publica = publica;
+            this.signer = privada != null ? new RsaSigner(privada) : null;
+            this.verificador = new RsaVerifier(publica);
+            this.activaDesde = activaDesde;
+            this.headers = Collections.singletonMap("kid", kid);
+            this.firmante = privada != null ? JwtEncoderRapido.Firmante.rsa(kid, privada) : null;
+        }
+
+        private boolean vigente(Instant ahora) {
+            return retiradaEn == null || ahora.isBefore(retiradaEn);
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public RSAPublicKey getPublica() {
+            return publica;
+        }
+
+        public Signer getSigner() {
+            return signer;
+        }
+
+        public SignatureVerifier getVerificador() {
+            return verificador;
+        }
+
+        public Instant getActivaDesde() {
+            return activaDesde;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public JwtEncoderRapido.Firmante getFirmante() {
+            return firmante;
+        }
+
+        /**
+         * Llave pública en formato PEM que se regresa en /oauth/token_key
+         */
+        public String pem() {
+            String base64 = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(publica.getEncoded());
+            return "-----BEGIN PUBLIC KEY-----\n" + base64 + "\n-----END PUBLIC KEY-----";
+        }
+
+        /**
+         * Llave pública en formato JWK (RFC 7517) que se publica en el JWKS
+         */
+        public Map<String, Object> jwk() {
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "RSA");
+            jwk.put("kid", kid);
+            jwk.put("use", "sig");
+            jwk.put("alg", "RS256");
+            jwk.put("n", base64Url(publica.getModulus()));
+            jwk.put("e", base64Url(publica.getPublicExponent()));
+            return jwk;
+        }
+    }
+}
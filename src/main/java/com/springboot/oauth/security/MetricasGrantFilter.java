@@ -0,0 +1,79 @@
+package com.springboot.oauth.security;
+
+import com.springboot.oauth.metrics.MetricasOauth;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+
+public class MetricasGrantFilter extends OncePerRequestFilter {
+
+    private static final Set<String> GRANT_TYPES = new HashSet<>(Arrays.asList(
+            "password", "refresh_token", "client_credentials", "authorization_code", "implicit"));
+
+    /**
+     * Filtro que se registra primero delante del endPoint /oauth/token y mide el tiempo de
+     * la petición completa (autenticación del cliente, login del usuario y emisión del token)
+     * en oauth.grant con el grant_type, el client_id y el status de la respuesta.
+     *
+     * El client_id se toma del header Authorization (HTTP Basic) o del parámetro client_id,
+     * solo se utilizan como tag los clientes registrados y los grant types conocidos para que
+     * las peticiones con valores arbitrarios no creen nuevas series en Prometheus
+     *
+     * NOTA: no se registra como @Component para que spring boot no lo agregue a todas las peticiones
+     */
+    private final MetricasOauth metricas;
+
+    private final Set<String> clientes;
+
+    public MetricasGrantFilter(MetricasOauth metricas, Set<String> clientes) {
+        this.metricas = metricas;
+        this.clientes = new HashSet<>(clientes);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"/oauth/token".equals(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long inicio = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            String grantType = request.getParameter("grant_type");
+            String clientId = clientId(request);
+            metricas.grant(GRANT_TYPES.contains(grantType) ? grantType : "otro",
+                    clientes.contains(clientId) ? clientId : "desconocido",
+                    response.getStatus(), System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * También lo utiliza LimiteTasaFilter
+     */
+    static String clientId(HttpServletRequest request) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.regionMatches(true, 0, "Basic ", 0, 6)) {
+            try {
+                String credenciales = new String(Base64.getDecoder().decode(authorization.substring(6).trim()), StandardCharsets.UTF_8);
+                int separador = credenciales.indexOf(':');
+                return separador >= 0 ? credenciales.substring(0, separador) : credenciales;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return request.getParameter("client_id");
+    }
+}
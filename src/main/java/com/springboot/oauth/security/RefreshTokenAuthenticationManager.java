@@ -0,0 +1,68 @@
+package com.springboot.oauth.security;
+
+import com.springboot.oauth.metrics.MetricasOauth;
+import com.springboot.oauth.service.IntentosLoginTracker;
+import com.springboot.oauth.service.UsuariosModificados;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.util.Collections;
+
+public class RefreshTokenAuthenticationManager implements AuthenticationManager {
+
+    /**
+     * AuthenticationManager que DefaultTokenServices utiliza para volver a validar al usuario en el
+     * grant refresh_token, antes cada refresh buscaba al usuario en el microservicio-administrador
+     * con UsuarioService y después en InfoAdicionalToken.
+     *
+     * Si el usuario no aparece en UsuariosModificados y no está bloqueado por intentos fallidos
+     * se confía en los claims del refresh token que ya se validó su firma y su exp, el nuevo
+     * token se emite con sus roles y su información adicional (DatosUsuarioToken) sin llamadas
+     * remotas, en caso contrario se valida como antes con PreAuthenticatedAuthenticationProvider
+     * y UsuarioService, que rechaza a los usuarios deshabilitados
+     */
+    private final UsuariosModificados usuariosModificados;
+
+    private final IntentosLoginTracker intentosLoginTracker;
+
+    private final MetricasOauth metricas;
+
+    private final AuthenticationManager remoto;
+
+    public RefreshTokenAuthenticationManager(UserDetailsService usuarioService, UsuariosModificados usuariosModificados,
+                                             IntentosLoginTracker intentosLoginTracker, MetricasOauth metricas) {
+        this.usuariosModificados = usuariosModificados;
+        this.intentosLoginTracker = intentosLoginTracker;
+        this.metricas = metricas;
+        PreAuthenticatedAuthenticationProvider provider = new PreAuthenticatedAuthenticationProvider();
+        provider.setPreAuthenticatedUserDetailsService(new UserDetailsByNameServiceWrapper<>(usuarioService));
+        this.remoto = new ProviderManager(Collections.singletonList(provider));
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        String username = authentication.getName();
+        if (!usuariosModificados.requiereVerificacion(username) && !intentosLoginTracker.estaBloqueado(username)) {
+            metricas.refresh("local");
+            User usuario = new User(username, "", authentication.getAuthorities());
+            PreAuthenticatedAuthenticationToken resultado = new PreAuthenticatedAuthenticationToken(
+                    usuario, authentication.getCredentials(), usuario.getAuthorities());
+            if (authentication.getPrincipal() instanceof Authentication) {
+                resultado.setDetails(((Authentication) authentication.getPrincipal()).getDetails());
+            }
+            return resultado;
+        }
+        metricas.refresh("remoto");
+        long posicion = usuariosModificados.posicion();
+        Authentication resultado = remoto.authenticate(authentication);
+        usuariosModificados.verificado(username, posicion);
+        return resultado;
+    }
+}
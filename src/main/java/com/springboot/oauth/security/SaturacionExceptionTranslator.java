@@ -0,0 +1,34 @@
+package com.springboot.oauth.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+
+public class SaturacionExceptionTranslator implements WebResponseExceptionTranslator<OAuth2Exception> {
+
+    /**
+     * Traduce las excepciones del endPoint /oauth/token igual que DefaultWebResponseExceptionTranslator
+     * y para ServicioSaturadoException agrega el header Retry-After a la respuesta
+     */
+    private final WebResponseExceptionTranslator<OAuth2Exception> delegate = new DefaultWebResponseExceptionTranslator();
+
+    @Override
+    public ResponseEntity<OAuth2Exception> translate(Exception e) throws Exception {
+        Throwable causa = e;
+        while (causa != null && !(causa instanceof ServicioSaturadoException)) {
+            causa = causa.getCause();
+        }
+        if (causa == null) {
+            return delegate.translate(e);
+        }
+        ServicioSaturadoException saturado = (ServicioSaturadoException) causa;
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CACHE_CONTROL, "no-store");
+        headers.set(HttpHeaders.PRAGMA, "no-cache");
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(saturado.getRetryAfterSegundos()));
+        return new ResponseEntity<>(saturado, headers, HttpStatus.valueOf(saturado.getHttpErrorCode()));
+    }
+}
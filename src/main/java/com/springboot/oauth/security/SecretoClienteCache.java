@@ -0,0 +1,101 @@
+package com.springboot.oauth.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+@Component
+public class SecretoClienteCache {
+
+    /**
+     * Cada petición a /oauth/token y /oauth/check_token autentica a la aplicación cliente por
+     * HTTP Basic y validaba su secret con BCrypt, lo que duplicaba el costo de CPU de cada token.
+     *
+     * Esta clase recuerda por un tiempo corto las validaciones correctas, se guarda un digest
+     * SHA-256 del secret con una sal aleatoria del proceso y se compara en tiempo constante
+     * con MessageDigest.isEqual, la llave es el secret encriptado del cliente que es único por
+     * clientId, de esta forma al rotar el secret de un cliente la entrada anterior deja de usarse.
+     *
+     * authorization.clientes-cache.ttl-segundos = tiempo que se recuerda una validación correcta
+     *
+     * NOTA: no implementa PasswordEncoder para no registrar un segundo PasswordEncoder en spring
+     */
+    private final Cache<String, byte[]> verificados;
+
+    private final byte[] sal = new byte[32];
+
+    @Autowired
+    private BCryptPasswordEncoder passwordEncoder;
+
+    public SecretoClienteCache(@Value("${authorization.clientes-cache.ttl-segundos:300}") long ttlSegundos,
+                               @Value("${authorization.clientes-cache.maximo:1000}") long maximo) {
+        this.verificados = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+                .recordStats()
+                .build();
+        new SecureRandom().nextBytes(sal);
+    }
+
+    /**
+     * PasswordEncoder para los secrets de los clientes que se registra en
+     * AuthorizationServerSecurityConfigurer
+     */
+    public PasswordEncoder encoder() {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return passwordEncoder.encode(rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return verificar(rawPassword, encodedPassword);
+            }
+        };
+    }
+
+    public boolean verificar(CharSequence secret, String secretEncriptado) {
+        if (secret == null || secretEncriptado == null) {
+            return passwordEncoder.matches(secret, secretEncriptado);
+        }
+        byte[] digest = digest(secret);
+        byte[] verificado = verificados.getIfPresent(secretEncriptado);
+        if (verificado != null) {
+            return MessageDigest.isEqual(verificado, digest);
+        }
+        if (passwordEncoder.matches(secret, secretEncriptado)) {
+            verificados.put(secretEncriptado, digest);
+            return true;
+        }
+        return false;
+    }
+
+    public void invalidarTodos() {
+        verificados.invalidateAll();
+    }
+
+    public Cache<String, byte[]> getCache() {
+        return verificados;
+    }
+
+    private byte[] digest(CharSequence secret) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(sal);
+            return sha256.digest(secret.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
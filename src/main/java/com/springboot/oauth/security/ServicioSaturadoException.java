@@ -0,0 +1,33 @@
+package com.springboot.oauth.security;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+public class ServicioSaturadoException extends OAuth2Exception {
+
+    /**
+     * Excepción que se lanza cuando el servidor de autorización no puede atender la petición
+     * por saturación, se responde con el código de error temporarily_unavailable de OAuth2,
+     * un 503 y el header Retry-After con los segundos que el cliente deberá de esperar
+     */
+    private final long retryAfterSegundos;
+
+    public ServicioSaturadoException(long retryAfterSegundos) {
+        super("El servidor de autorización está saturado, intente más tarde");
+        this.retryAfterSegundos = retryAfterSegundos;
+    }
+
+    public long getRetryAfterSegundos() {
+        return retryAfterSegundos;
+    }
+
+    @Override
+    public String getOAuth2ErrorCode() {
+        return "temporarily_unavailable";
+    }
+
+    @Override
+    public int getHttpErrorCode() {
+        return HttpStatus.SERVICE_UNAVAILABLE.value();
+    }
+}
@@ -1,11 +1,15 @@
 package com.springboot.oauth.security;
 
+import com.springboot.oauth.metrics.MetricasOauth;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationEventPublisher;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -39,22 +43,71 @@ public class SpringSecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private AuthenticationEventPublisher eventPublisher;
 
+    @Autowired
+    private MetricasOauth metricas;
+
+    /**
+     * Configuración de BCrypt
+     * security.bcrypt.costo = factor de costo (log2 de las rondas), al cambiarlo los passwords se
+     * vuelven a encriptar con el nuevo costo cuando el usuario inicia sesión correctamente
+     * security.bcrypt.hilos = hilos dedicados a BCrypt, por defecto el número de núcleos
+     * security.bcrypt.cola = número máximo de validaciones en espera antes de rechazar con 503
+     * security.bcrypt.espera-maxima-ms = tiempo máximo que un login espera su validación
+     */
+    @Value("${security.bcrypt.costo:10}")
+    private int costo;
+
+    @Value("${security.bcrypt.hilos:0}")
+    private int hilos;
+
+    @Value("${security.bcrypt.cola:64}")
+    private int cola;
+
+    @Value("${security.bcrypt.espera-maxima-ms:2000}")
+    private long esperaMaximaMs;
+
+    @Value("${security.bcrypt.retry-after-segundos:1}")
+    private long retryAfterSegundos;
+
+    @Value("${security.bcrypt.rehash:true}")
+    private boolean rehash;
+
     /**
      * Paso 2: Se deberá de registrar el usuarioService en AuthenticationManagerBuilder,
      * AuthenticationManagerBuilder se deberá de inyectar a través del método,
      * auth permite registrar a través de userDetailsService el usuarioService
      * se deberá de encriptar el password para dar mayor seguridad al password
+     *
+     * El password de los usuarios se valida con el VerificadorPassword que ejecuta BCrypt
+     * en su propio pool de hilos y no en los hilos de Tomcat
      */
 
     @Override
     @Autowired
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-       auth.userDetailsService(usuarioService).passwordEncoder(passwordEncoder())
+       auth.userDetailsService(usuarioService).passwordEncoder(verificadorPassword().encoder())
                .and().authenticationEventPublisher(eventPublisher);
 
     }
 
 
+    /**
+     * Se mantiene la configuración por defecto de WebSecurityConfigurerAdapter (todas las peticiones
+     * autenticadas con formLogin y httpBasic) y se permite el acceso público al JWKS con las llaves
+     * públicas que utilizan los servidores de recursos para validar el token, y al endPoint
+     * de actuator health que consulta el balanceador, /actuator/prometheus se protege en
+     * AdministracionSecurityConfig
+     */
+    @Override
+    protected void configure(HttpSecurity http) throws Exception {
+        http.authorizeRequests()
+                .antMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
+                .antMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+                .anyRequest().authenticated()
+                .and().formLogin()
+                .and().httpBasic();
+    }
+
     /**
      * Paso 4: configurar el AuthenticationManager se deberá también registrar como un
      * componente de spring con @Bean para que posteriormente se pueda inyectar en la
@@ -79,7 +132,17 @@ public class SpringSecurityConfig extends WebSecurityConfigurerAdapter {
      */
     @Bean
     public BCryptPasswordEncoder passwordEncoder(){
-        return  new BCryptPasswordEncoder();
+        return  new BCryptPasswordEncoder(costo);
+    }
+
+    /**
+     * Paso 5: Se registra el VerificadorPassword (bulkhead de BCrypt) con su pool de hilos
+     * dedicado y su cola limitada
+     */
+    @Bean
+    public VerificadorPassword verificadorPassword() {
+        int hilosBCrypt = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+        return new VerificadorPassword(passwordEncoder(), hilosBCrypt, cola, esperaMaximaMs, retryAfterSegundos, rehash, metricas);
     }
 
 }
@@ -0,0 +1,105 @@
+package com.springboot.oauth.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@Component
+public class TokenVerificadoCache {
+
+    /**
+     * Cache de los tokens que ya se decodificaron y se validó su firma, /oauth/check_token
+     * decodifica el mismo token dos veces por petición y los gateways revisan el mismo token
+     * miles de veces por minuto, con esta cache solo se valida la firma la primera vez.
+     *
+     * La llave es el digest SHA-256 del token para no guardar el token completo y cada entrada
+     * expira en el exp del token o en ttl-segundos, lo que ocurra primero
+     *
+     * authorization.tokens-verificados.maximo = número máximo de tokens en la cache
+     * authorization.tokens-verificados.ttl-segundos = tiempo máximo que se guarda un token
+     */
+    private final Cache<String, Verificado> verificados;
+
+    public TokenVerificadoCache(@Value("${authorization.tokens-verificados.maximo:100000}") long maximo,
+                                @Value("${authorization.tokens-verificados.ttl-segundos:300}") long ttlSegundos) {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSegundos);
+        this.verificados = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfter(new Expiry<String, Verificado>() {
+                    @Override
+                    public long expireAfterCreate(String llave, Verificado verificado, long currentTime) {
+                        long restante = TimeUnit.MILLISECONDS.toNanos(verificado.expiraEn - System.currentTimeMillis());
+                        return Math.max(0, Math.min(ttlNanos, restante));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String llave, Verificado verificado, long currentTime, long currentDuration) {
+                        return expireAfterCreate(llave, verificado, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String llave, Verificado verificado, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Regresa los claims del token de la cache o los obtiene con la función verificar,
+     * los tokens sin exp no se guardan. Los claims que se regresan no se pueden modificar
+     */
+    public Map<String, Object> obtener(String token, Function<String, Map<String, Object>> verificar) {
+        String llave = digest(token);
+        Verificado verificado = verificados.getIfPresent(llave);
+        if (verificado != null) {
+            return verificado.claims;
+        }
+        Map<String, Object> claims = Collections.unmodifiableMap(verificar.apply(token));
+        Object exp = claims.get(AccessTokenConverter.EXP);
+        if (exp instanceof Number) {
+            verificados.put(llave, new Verificado(claims, ((Number) exp).longValue() * 1000L));
+        }
+        return claims;
+    }
+
+    public void invalidarTodos() {
+        verificados.invalidateAll();
+    }
+
+    public Cache<String, ?> getCache() {
+        return verificados;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Verificado {
+        private final Map<String, Object> claims;
+        private final long expiraEn;
+
+        private Verificado(Map<String, Object> claims, long expiraEn) {
+            this.claims = claims;
+            this.expiraEn = expiraEn;
+        }
+    }
+}
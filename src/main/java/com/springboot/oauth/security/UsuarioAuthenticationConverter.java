@@ -0,0 +1,27 @@
+package com.springboot.oauth.security;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultUserAuthenticationConverter;
+
+import java.util.Map;
+
+public class UsuarioAuthenticationConverter extends DefaultUserAuthenticationConverter {
+
+    /**
+     * Al leer un token además del username y los roles se conserva la información adicional
+     * del usuario (DatosUsuarioToken) como details de la autenticación, la conversión del
+     * usuario a claims no cambia, JwtEncoderRapido depende de ello
+     */
+    @Override
+    public Authentication extractAuthentication(Map<String, ?> map) {
+        Authentication authentication = super.extractAuthentication(map);
+        if (authentication instanceof AbstractAuthenticationToken) {
+            DatosUsuarioToken datos = DatosUsuarioToken.desdeClaims(map);
+            if (datos != null) {
+                ((AbstractAuthenticationToken) authentication).setDetails(datos);
+            }
+        }
+        return authentication;
+    }
+}
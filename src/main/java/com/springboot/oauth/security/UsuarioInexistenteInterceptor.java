@@ -0,0 +1,46 @@
+package com.springboot.oauth.security;
+
+import com.springboot.oauth.service.UsuariosInexistentesCache;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class UsuarioInexistenteInterceptor implements HandlerInterceptor {
+
+    private static final String TOKEN = "/oauth/token";
+
+    /**
+     * Interceptor que AuthorizationServerConfig registra en el TokenEndpoint, si el grant_type
+     * es password y el username está en la cache de usuarios inexistentes se rechaza el login
+     * sin llamar al microservicio-administrador y sin validar con BCrypt
+     *
+     * Se ejecuta después de autenticar al cliente, así solo un cliente con su secret correcto
+     * puede preguntar por un username, y se lanza InvalidGrantException "Bad credentials" para
+     * que el manejador de errores del TokenEndpoint arme exactamente la misma respuesta que un
+     * password incorrecto, de esta forma la respuesta no revela si el username existe
+     *
+     * NOTA: no se registra como @Component para que spring boot no lo agregue a todas las peticiones
+     */
+    private final UsuariosInexistentesCache usuariosInexistentes;
+
+    public UsuarioInexistenteInterceptor(UsuariosInexistentesCache usuariosInexistentes) {
+        this.usuariosInexistentes = usuariosInexistentes;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Authentication cliente = SecurityContextHolder.getContext().getAuthentication();
+        if (!TOKEN.equals(request.getServletPath()) || cliente == null || !cliente.isAuthenticated()) {
+            return true;
+        }
+        if ("password".equals(request.getParameter("grant_type"))
+                && usuariosInexistentes.cortocircuitar(request.getParameter("username"))) {
+            throw new InvalidGrantException("Bad credentials");
+        }
+        return true;
+    }
+}
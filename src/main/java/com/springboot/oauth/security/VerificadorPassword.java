@@ -0,0 +1,129 @@
+package com.springboot.oauth.security;
+
+import com.springboot.oauth.metrics.MetricasOauth;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class VerificadorPassword {
+
+    /**
+     * Esta clase ejecuta las validaciones y encriptaciones de BCrypt del login de los usuarios
+     * en un pool de hilos propio (bulkhead) con el tamaño del número de núcleos y una cola limitada,
+     * de esta forma una ráfaga de logins no ocupa todos los hilos de Tomcat con trabajo de CPU
+     * y los endPoints /oauth/token_key y /oauth/check_token siguen respondiendo.
+     *
+     * Cuando la cola está llena o la espera supera esperaMaximaMs se rechaza el login de inmediato
+     * con ServicioSaturadoException que se responde como 503 con el header Retry-After
+     *
+     * El tiempo de cada validación y el tiempo de espera en la cola se registran en MetricasOauth
+     *
+     * NOTA: no implementa PasswordEncoder para que el BCryptPasswordEncoder siga siendo el único
+     * PasswordEncoder del contenedor de spring, el que se utiliza para validar el secret de los clientes
+     */
+    private final BCryptPasswordEncoder passwordEncoder;
+
+    private final ThreadPoolExecutor executor;
+
+    private final long esperaMaximaMs;
+
+    private final long retryAfterSegundos;
+
+    private final boolean rehash;
+
+    private final MetricasOauth metricas;
+
+    public VerificadorPassword(BCryptPasswordEncoder passwordEncoder, int hilos, int cola,
+                               long esperaMaximaMs, long retryAfterSegundos, boolean rehash, MetricasOauth metricas) {
+        this.passwordEncoder = passwordEncoder;
+        this.metricas = metricas;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.retryAfterSegundos = retryAfterSegundos;
+        this.rehash = rehash;
+        AtomicInteger numero = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(cola), runnable -> {
+                    Thread hilo = new Thread(runnable, "bcrypt-" + numero.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * PasswordEncoder que se registra en el AuthenticationManagerBuilder de SpringSecurityConfig,
+     * upgradeEncoding permite que DaoAuthenticationProvider vuelva a encriptar el password
+     * con el nuevo costo de BCrypt cuando el login es correcto (rehash)
+     */
+    public PasswordEncoder encoder() {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return ejecutar("encode", () -> passwordEncoder.encode(rawPassword));
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return ejecutar("matches", () -> passwordEncoder.matches(rawPassword, encodedPassword));
+            }
+
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                return rehash && passwordEncoder.upgradeEncoding(encodedPassword);
+            }
+        };
+    }
+
+    public int getTareasEnCola() {
+        return executor.getQueue().size();
+    }
+
+    private <T> T ejecutar(String operacion, Supplier<T> bcrypt) {
+        long enviada = System.nanoTime();
+        Callable<T> tarea = () -> {
+            long inicio = System.nanoTime();
+            metricas.esperaBCrypt(inicio - enviada);
+            try {
+                return bcrypt.get();
+            } finally {
+                metricas.bcrypt(operacion, System.nanoTime() - inicio);
+            }
+        };
+        Future<T> futuro;
+        try {
+            futuro = executor.submit(tarea);
+        } catch (RejectedExecutionException e) {
+            throw new ServicioSaturadoException(retryAfterSegundos);
+        }
+        try {
+            return futuro.get(esperaMaximaMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            futuro.cancel(true);
+            throw new ServicioSaturadoException(retryAfterSegundos);
+        } catch (InterruptedException e) {
+            futuro.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServicioSaturadoException(retryAfterSegundos);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void detener() {
+        executor.shutdownNow();
+    }
+}
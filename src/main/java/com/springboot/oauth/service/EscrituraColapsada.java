@@ -0,0 +1,78 @@
+package com.springboot.oauth.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+public class EscrituraColapsada<K, V, R> {
+
+    /**
+     * Colapsa las escrituras concurrentes de una misma llave en una sola escritura
+     * en donde gana el último valor (last-writer-wins).
+     *
+     * Cada hilo deja su valor como pendiente, si ya existe un valor pendiente lo reemplaza
+     * y comparte su CompletableFuture, el primer hilo que logra marcar la llave como
+     * "escribiendo" realiza la escritura del último valor pendiente y los demás hilos
+     * reciben el resultado de esa escritura, todo sin bloqueos solo con CAS.
+     */
+    private final ConcurrentMap<K, Ranura<V, R>> ranuras = new ConcurrentHashMap<>();
+
+    public R escribir(K llave, V valor, Function<V, R> escritura) {
+        Ranura<V, R> ranura = ranuras.computeIfAbsent(llave, k -> new Ranura<>());
+        CompletableFuture<R> futuro = ranura.depositar(valor);
+        ranura.drenar(escritura);
+        if (!ranura.escribiendo.get() && ranura.pendiente.get() == null) {
+            ranuras.remove(llave, ranura);
+        }
+        return SingleFlight.esperar(futuro);
+    }
+
+    private static final class Pendiente<V, R> {
+        private final V valor;
+        private final CompletableFuture<R> futuro;
+
+        private Pendiente(V valor, CompletableFuture<R> futuro) {
+            this.valor = valor;
+            this.futuro = futuro;
+        }
+    }
+
+    private static final class Ranura<V, R> {
+        private final AtomicReference<Pendiente<V, R>> pendiente = new AtomicReference<>();
+        private final AtomicBoolean escribiendo = new AtomicBoolean();
+
+        private CompletableFuture<R> depositar(V valor) {
+            while (true) {
+                Pendiente<V, R> actual = pendiente.get();
+                CompletableFuture<R> futuro = actual != null ? actual.futuro : new CompletableFuture<>();
+                if (pendiente.compareAndSet(actual, new Pendiente<>(valor, futuro))) {
+                    return futuro;
+                }
+            }
+        }
+
+        /**
+         * Solo un hilo a la vez escribe, al terminar se vuelve a revisar si otro hilo
+         * dejó un valor pendiente mientras se escribía para no dejarlo sin escribir
+         */
+        private void drenar(Function<V, R> escritura) {
+            while (pendiente.get() != null && escribiendo.compareAndSet(false, true)) {
+                try {
+                    Pendiente<V, R> lote;
+                    while ((lote = pendiente.getAndSet(null)) != null) {
+                        try {
+                            lote.futuro.complete(escritura.apply(lote.valor));
+                        } catch (RuntimeException | Error e) {
+                            lote.futuro.completeExceptionally(e);
+                        }
+                    }
+                } finally {
+                    escribiendo.set(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.springboot.oauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import com.springboot.oauth.metrics.MetricasOauth;
+import feign.FeignException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+public class IntentosLoginTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(IntentosLoginTracker.class);
+
+    /**
+     * Contador local de los intentos fallidos de login por username, el contador se incrementa
+     * de forma atómica y decide el bloqueo del usuario de inmediato, los cambios de intentos y
+     * enabled se escriben después en el microservicio-administrador (write-behind) agrupando
+     * todos los intentos que ocurran dentro de login.intentos.escritura-ms en un solo PUT.
+     *
+     * De esta forma los intentos concurrentes ya no se pierden y un ataque de fuerza bruta
+     * cuesta operaciones en memoria y no llamadas HTTP
+     *
+     * Cada intento fallido, bloqueo y reinicio se envía a las demás instancias con
+     * ClusterInvalidaciones para que el máximo de intentos se cuente en todo el cluster y no por
+     * instancia, los contadores que llegan de otra instancia no tienen usuario y nunca se escriben
+     * en el microservicio-administrador, la escritura la realiza la instancia que recibió el login.
+     *
+     * Los contadores se guardan en una cache de Caffeine, cada intento fallido renueva el tiempo
+     * de vida del contador y al vencer se olvida, así un ataque con muchos usernames no hace
+     * crecer la memoria sin límite. Cuando llega un usuario nuevo del microservicio-administrador
+     * (la cache de usuarios se invalidó o venció) y muestra que se habilitó de nuevo o que sus
+     * intentos se reiniciaron, el contador se vuelve a tomar del usuario para no deshabilitarlo
+     * otra vez con los intentos anteriores.
+     *
+     * login.intentos.maximo = número de intentos fallidos para deshabilitar al usuario
+     * login.intentos.escritura-ms = tiempo que se agrupan los intentos antes de escribirlos
+     * login.intentos.ttl-segundos = tiempo que se recuerda un contador desde su último intento fallido
+     * login.intentos.maximo-usuarios = número máximo de contadores en memoria
+     */
+    private final Cache<String, Contador> contadores;
+
+    private final ScheduledExecutorService escritor;
+
+    @Autowired
+    private IUsuarioService usuarioService;
+
+    @Autowired
+    private UsuarioCache usuarioCache;
+
+    @Autowired
+    private UsuariosModificados usuariosModificados;
+
+    @Autowired
+    private TokensRevocados tokensRevocados;
+
+    @Autowired
+    private MetricasOauth metricas;
+
+    @Autowired
+    private ClusterInvalidaciones cluster;
+
+    @Value("${login.intentos.maximo:3}")
+    private int maximo;
+
+    @Value("${login.intentos.escritura-ms:500}")
+    private long escrituraMs;
+
+    @Autowired
+    public IntentosLoginTracker(@Value("${login.intentos.hilos:2}") int hilos,
+                                @Value("${login.intentos.ttl-segundos:3600}") long ttlSegundos,
+                                @Value("${login.intentos.maximo-usuarios:100000}") long maximoUsuarios) {
+        this(ttlSegundos, maximoUsuarios, Ticker.systemTicker(), crearEscritor(hilos));
+    }
+
+    /**
+     * Las pruebas controlan el tiempo de vida de los contadores con su propio Ticker y reciben
+     * las escrituras en su propio ScheduledExecutorService (ver escribirPendientes)
+     */
+    IntentosLoginTracker(long ttlSegundos, long maximoUsuarios, Ticker ticker, ScheduledExecutorService escritor) {
+        this.contadores = Caffeine.newBuilder()
+                .maximumSize(maximoUsuarios)
+                .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+                .ticker(ticker)
+                .build();
+        this.escritor = escritor;
+    }
+
+    private static ScheduledExecutorService crearEscritor(int hilos) {
+        AtomicInteger numero = new AtomicInteger();
+        return Executors.newScheduledThreadPool(hilos, runnable -> {
+            Thread hilo = new Thread(runnable, "intentos-login-" + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Registra un intento fallido y regresa el número de intentos actual, al llegar al máximo
+     * el usuario se deshabilita en la cache local de inmediato, se revocan sus tokens y se escribe sin esperar
+     */
+    public int registrarFallo(AdministradorEntity usuario) {
+        Contador contador = contadores.get(usuario.getUsername(), k -> new Contador(usuario.getIntentos()));
+        sincronizar(contador, usuario);
+        contador.usuario = usuario;
+        int intentos = contador.intentos.incrementAndGet();
+        renovar(usuario.getUsername(), contador);
+        cluster.intentoFallido(usuario.getUsername());
+        if (intentos >= maximo && contador.bloqueado.compareAndSet(false, true)) {
+            AdministradorEntity deshabilitado = copiar(usuario, intentos);
+            usuarioCache.guardar(deshabilitado);
+            usuariosModificados.marcar(usuario.getUsername());
+            tokensRevocados.revocarUsuario(usuario.getUsername());
+            cluster.usuarioDeshabilitado(usuario.getUsername());
+            metricas.bloqueo();
+            programar(usuario.getUsername(), contador, 0);
+        } else {
+            programar(usuario.getUsername(), contador, escrituraMs);
+        }
+        return intentos;
+    }
+
+    /**
+     * Al tener un login correcto se reinicia el contador, si el contador ya está en cero
+     * no se realiza ninguna llamada al microservicio-administrador
+     */
+    public void registrarExito(AdministradorEntity usuario) {
+        Contador contador = contadores.getIfPresent(usuario.getUsername());
+        if (contador == null) {
+            if (usuario.getIntentos() == null || usuario.getIntentos() == 0) {
+                return;
+            }
+            contador = contadores.get(usuario.getUsername(), k -> new Contador(usuario.getIntentos()));
+        }
+        contador.usuario = usuario;
+        if (contador.intentos.getAndSet(0) == 0 && !contador.pendiente.get()
+                && (usuario.getIntentos() == null || usuario.getIntentos() == 0)) {
+            return;
+        }
+        contador.bloqueado.set(false);
+        metricas.reinicioIntentos();
+        cluster.intentosReiniciados(usuario.getUsername());
+        programar(usuario.getUsername(), contador, escrituraMs);
+    }
+
+    /**
+     * Suma los intentos fallidos que recibió otra instancia del cluster, el contador vence
+     * igual que los locales contando desde el último intento que llegó del cluster
+     */
+    public void aplicarIntentos(String username, int intentos) {
+        Contador contador = contadores.get(username, k -> new Contador(0));
+        contador.intentos.addAndGet(intentos);
+        renovar(username, contador);
+    }
+
+    /**
+     * Otra instancia deshabilitó al usuario, se bloquea también aquí para que el grant
+     * refresh_token lo rechace sin esperar al microservicio-administrador
+     */
+    public void aplicarBloqueo(String username) {
+        Contador contador = contadores.get(username, k -> new Contador(0));
+        contador.bloqueado.set(true);
+        renovar(username, contador);
+    }
+
+    /**
+     * Otra instancia reinició el contador con un login correcto
+     */
+    public void aplicarReinicio(String username) {
+        Contador contador = contadores.getIfPresent(username);
+        if (contador == null) {
+            return;
+        }
+        contador.intentos.set(0);
+        contador.bloqueado.set(false);
+        if (contador.usuario == null) {
+            contadores.asMap().remove(username, contador);
+        }
+    }
+
+    /**
+     * Se olvida el contador cuando se desaloja el usuario de la cache desde UsuarioCacheController,
+     * el siguiente intento toma los intentos del usuario que se lee del microservicio-administrador,
+     * si hay una escritura pendiente el contador se conserva para no perderla
+     */
+    public void olvidar(String username) {
+        Contador contador = contadores.getIfPresent(username);
+        if (contador != null && !contador.pendiente.get()) {
+            contadores.asMap().remove(username, contador);
+        }
+    }
+
+    public void olvidarTodos() {
+        contadores.asMap().values().removeIf(contador -> !contador.pendiente.get());
+    }
+
+    public boolean estaBloqueado(String username) {
+        Contador contador = contadores.getIfPresent(username);
+        return contador != null && contador.bloqueado.get();
+    }
+
+    public int getMaximo() {
+        return maximo;
+    }
+
+    /**
+     * Reemplazar el contador por sí mismo cuenta como escritura en Caffeine y reinicia
+     * su tiempo de vida, si otro hilo ya lo quitó de la cache no se vuelve a agregar
+     */
+    private void renovar(String username, Contador contador) {
+        contadores.asMap().replace(username, contador, contador);
+    }
+
+    private void programar(String username, Contador contador, long retardoMs) {
+        if (contador.pendiente.compareAndSet(false, true)) {
+            escritor.schedule(() -> escribir(username, contador), retardoMs, TimeUnit.MILLISECONDS);
+        } else if (retardoMs == 0) {
+            escritor.execute(() -> escribir(username, contador));
+        }
+    }
+
+    /**
+     * Escribe en el hilo actual los contadores con una escritura pendiente sin esperar a que
+     * venza su retardo, la tarea programada de cada uno ya no encuentra nada que escribir
+     */
+    void escribirPendientes() {
+        contadores.asMap().forEach((username, contador) -> {
+            if (contador.pendiente.get()) {
+                escribir(username, contador);
+            }
+        });
+    }
+
+    private void escribir(String username, Contador contador) {
+        if (!contador.pendiente.compareAndSet(true, false)) {
+            return;
+        }
+        int intentos = contador.intentos.get();
+        AdministradorEntity usuario = contador.usuario;
+        try {
+            usuarioService.update(copiar(usuario, intentos), usuario.getId());
+        } catch (FeignException e) {
+            log.error(String.format("No se pudieron actualizar los intentos del usuario %s", username), e);
+        }
+        if (contador.intentos.get() == 0 && !contador.pendiente.get()) {
+            contadores.asMap().remove(username, contador);
+        }
+    }
+
+    /**
+     * Compara el contador con un usuario que no es el que se usó la última vez, es decir que se
+     * leyó de nuevo del microservicio-administrador, no se toca mientras hay una escritura
+     * pendiente porque el usuario todavía no tiene los intentos de este contador.
+     *
+     * Paso 1: si el contador está bloqueado y el usuario ya está habilitado, un administrador lo
+     * habilitó de nuevo y se toman sus intentos (o cero si se dejaron en el máximo)
+     * Paso 2: si el usuario tiene cero intentos sus intentos se reiniciaron, la escritura de este
+     * contador y la de las demás instancias siempre llevan un número mayor que cero
+     * Paso 3: si el contador lo creó otra instancia solo tiene los intentos sumados en el cluster
+     * y se toma el mayor
+     */
+    private void sincronizar(Contador contador, AdministradorEntity usuario) {
+        if (contador.usuario == usuario || contador.pendiente.get()) {
+            return;
+        }
+        int guardados = usuario.getIntentos() != null ? usuario.getIntentos() : 0;
+        boolean habilitado = !Boolean.FALSE.equals(usuario.getEnabled());
+        if (contador.bloqueado.get() && habilitado) {
+            contador.intentos.set(guardados >= maximo ? 0 : guardados);
+            contador.bloqueado.set(false);
+        } else if (guardados == 0 && contador.usuario != null) {
+            contador.intentos.set(0);
+            contador.bloqueado.set(false);
+        } else if (contador.usuario == null) {
+            contador.intentos.accumulateAndGet(guardados, Math::max);
+        }
+    }
+
+    /**
+     * Se escribe una copia del usuario para no modificar la instancia que comparten
+     * la cache y las peticiones que se están atendiendo
+     */
+    private AdministradorEntity copiar(AdministradorEntity usuario, int intentos) {
+        AdministradorEntity copia = new AdministradorEntity();
+        BeanUtils.copyProperties(usuario, copia);
+        copia.setIntentos(intentos);
+        if (intentos >= maximo) {
+            copia.setEnabled(false);
+        }
+        return copia;
+    }
+
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        escritor.shutdown();
+        escritor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static final class Contador {
+        private final AtomicInteger intentos;
+        private final AtomicBoolean pendiente = new AtomicBoolean();
+        private final AtomicBoolean bloqueado = new AtomicBoolean();
+        private volatile AdministradorEntity usuario;
+
+        private Contador(Integer intentos) {
+            this.intentos = new AtomicInteger(intentos != null ? intentos : 0);
+        }
+    }
+}
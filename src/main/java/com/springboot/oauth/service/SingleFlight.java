@@ -0,0 +1,73 @@
+package com.springboot.oauth.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+public class SingleFlight<K, V> {
+
+    /**
+     * Permite que varios hilos que buscan la misma llave al mismo tiempo compartan
+     * una sola llamada remota, el primer hilo registra su CompletableFuture y realiza
+     * la llamada, los demás hilos esperan ese mismo resultado o esa misma excepción.
+     *
+     * NOTA: no existe un bloqueo global, el registro de las llamadas en vuelo se realiza
+     * con putIfAbsent de ConcurrentHashMap y se elimina al terminar la llamada
+     */
+    private final ConcurrentMap<K, CompletableFuture<V>> enVuelo = new ConcurrentHashMap<>();
+
+    public V ejecutar(K llave, Supplier<V> llamada) {
+        CompletableFuture<V> propio = new CompletableFuture<>();
+        CompletableFuture<V> existente = enVuelo.putIfAbsent(llave, propio);
+        if (existente != null) {
+            return esperar(existente);
+        }
+        try {
+            V resultado = llamada.get();
+            propio.complete(resultado);
+            return resultado;
+        } catch (RuntimeException | Error e) {
+            propio.completeExceptionally(e);
+            throw e;
+        } finally {
+            enVuelo.remove(llave, propio);
+        }
+    }
+
+    public int llamadasEnVuelo() {
+        return enVuelo.size();
+    }
+
+    /**
+     * Se espera el resultado de la llamada en vuelo y se relanza la excepción original
+     * para que el hilo que espera la reciba igual que el hilo que realizó la llamada
+     */
+    static <T> T esperar(CompletableFuture<T> futuro) {
+        boolean interrumpido = false;
+        try {
+            while (true) {
+                try {
+                    return futuro.get();
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                } catch (ExecutionException | CompletionException e) {
+                    Throwable causa = e.getCause() != null ? e.getCause() : e;
+                    if (causa instanceof RuntimeException) {
+                        throw (RuntimeException) causa;
+                    }
+                    if (causa instanceof Error) {
+                        throw (Error) causa;
+                    }
+                    throw new IllegalStateException(causa);
+                }
+            }
+        } finally {
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
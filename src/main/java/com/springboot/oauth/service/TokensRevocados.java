@@ -0,0 +1,389 @@
+package com.springboot.oauth.service;
+
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.UserAuthenticationConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+public class TokensRevocados {
+
+    private static final Logger log = LoggerFactory.getLogger(TokensRevocados.class);
+
+    private static final int VERSION_SNAPSHOT = 1;
+
+    private static final byte TIPO_JTI = 1;
+
+    private static final byte TIPO_USUARIO = 2;
+
+    /**
+     * Registro de los tokens revocados, JwtTokenStore no guarda los tokens emitidos y por ello no
+     * puede revocar ninguno, sin este registro un usuario deshabilitado por intentos fallidos
+     * conserva sus tokens hasta su exp.
+     *
+     * Se revoca de dos formas:
+     * jti = un token en particular (access o refresh token), se recuerda hasta el exp del token
+     * username = todos los tokens del usuario emitidos hasta el momento de la revocación, se
+     * recuerda hasta que vence el token más largo que se pudo emitir antes de la revocación
+     *
+     * Los tokens no tienen claim iat, la hora en que se emitió se calcula con su exp menos la
+     * vigencia del access o refresh token de su cliente (ver registrarCliente), si el cliente no
+     * se conoce se toma la vigencia más larga para no aceptar un token revocado.
+     *
+     * Cada entrada se agrupa en una cubeta según la hora en que expira, un hilo recorre cada
+     * revocacion.cubeta-segundos las cubetas vencidas y elimina sus entradas, de esta forma la
+     * memoria depende de las revocaciones vigentes y no del número de tokens emitidos, y cada
+     * consulta es una búsqueda en un ConcurrentHashMap.
+     *
+     * revocacion.maximo = número máximo de jti revocados, al llegar al máximo se revoca al usuario
+     * del token en lugar del jti
+     * revocacion.cubeta-segundos = tamaño de cada cubeta y frecuencia del barrido
+     * revocacion.snapshot.archivo = archivo local donde se guardan las revocaciones para no
+     * perderlas al reiniciar, por defecto microservicio-oauth/revocaciones-{server.port}.bin dentro
+     * de java.io.tmpdir para que dos instancias en el mismo equipo no compartan el archivo
+     * revocacion.snapshot.habilitado = false para guardar las revocaciones solo en memoria
+     *
+     * Las revocaciones locales se envían a las demás instancias con ClusterInvalidaciones, las
+     * que llegan de otra instancia se aplican con aplicarJti y aplicarUsuario sin reenviarse.
+     *
+     * NOTA: un token emitido en el mismo segundo en que se revoca su usuario también se rechaza,
+     * el exp del token solo tiene precisión de segundos
+     */
+    private final ConcurrentMap<String, Entrada> jtis = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Entrada> usuarios = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListMap<Long, Set<String>> cubetasJti = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentSkipListMap<Long, Set<String>> cubetasUsuario = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Vigencia> vigencias = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean cambios = new AtomicBoolean();
+
+    @Autowired
+    private ClusterInvalidaciones cluster;
+
+    private final ScheduledExecutorService barrido;
+
+    private final long maximo;
+
+    private final long cubetaSegundos;
+
+    private final String archivo;
+
+    private volatile long vigenciaMaxima = 3600;
+
+    public TokensRevocados(@Value("${revocacion.maximo:1000000}") long maximo,
+                           @Value("${revocacion.cubeta-segundos:60}") long cubetaSegundos,
+                           @Value("${revocacion.snapshot.habilitado:true}") boolean snapshot,
+                           @Value("${revocacion.snapshot.archivo:${java.io.tmpdir}/microservicio-oauth/revocaciones-${server.port:8080}.bin}") String archivo) {
+        this.maximo = maximo;
+        this.cubetaSegundos = Math.max(1, cubetaSegundos);
+        this.archivo = snapshot ? archivo.trim() : "";
+        this.barrido = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread hilo = new Thread(runnable, "tokens-revocados");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        restaurar();
+        barrido.scheduleWithFixedDelay(this::barrerYGuardar, cubetaSegundos, cubetaSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * AuthorizationServerConfig registra la vigencia en segundos de los tokens de cada cliente
+     */
+    public void registrarCliente(String clientId, int accessTokenSegundos, int refreshTokenSegundos) {
+        vigencias.put(clientId, new Vigencia(accessTokenSegundos, refreshTokenSegundos));
+        long maxima = 0;
+        for (Vigencia vigencia : vigencias.values()) {
+            maxima = Math.max(maxima, Math.max(vigencia.access, vigencia.refresh));
+        }
+        vigenciaMaxima = maxima;
+    }
+
+    /**
+     * Revoca el token con los claims ya validados, si el token ya expiró no se guarda nada
+     */
+    public void revocarToken(Map<String, ?> claims) {
+        Object jti = claims.get(AccessTokenConverter.JTI);
+        long exp = exp(claims);
+        if (jti == null || exp <= ahora()) {
+            return;
+        }
+        if (jtis.size() >= maximo) {
+            Object username = claims.get(UserAuthenticationConverter.USERNAME);
+            log.warn(String.format("Se llegó al máximo de %d jti revocados, se revoca al usuario %s", maximo, username));
+            if (username != null) {
+                revocarUsuario(username.toString());
+            }
+            return;
+        }
+        agregar(jtis, cubetasJti, jti.toString(), exp, exp);
+        cluster.jtiRevocado(jti.toString(), exp);
+    }
+
+    /**
+     * Revoca todos los tokens del usuario emitidos hasta este momento
+     */
+    public void revocarUsuario(String username) {
+        long ahora = ahora();
+        agregar(usuarios, cubetasUsuario, username, ahora, ahora + vigenciaMaxima);
+        cluster.usuarioRevocado(username, ahora);
+    }
+
+    /**
+     * Aplica un jti revocado en otra instancia del cluster, exp = exp del token
+     */
+    public void aplicarJti(String jti, long exp) {
+        if (exp > ahora() && jtis.size() < maximo) {
+            agregar(jtis, cubetasJti, jti, exp, exp);
+        }
+    }
+
+    /**
+     * Aplica la revocación de un usuario en otra instancia del cluster, se conserva la hora de
+     * la revocación de la otra instancia para no rechazar tokens emitidos después
+     */
+    public void aplicarUsuario(String username, long revocadoEn) {
+        long expiraEn = revocadoEn + vigenciaMaxima;
+        if (expiraEn > ahora()) {
+            agregar(usuarios, cubetasUsuario, username, revocadoEn, expiraEn);
+        }
+    }
+
+    /**
+     * Regresa el motivo de la revocación (jti o usuario) o null si el token no está revocado,
+     * recibe los claims ya validados del token
+     */
+    public String revocado(Map<String, ?> claims) {
+        long ahora = ahora();
+        Object jti = claims.get(AccessTokenConverter.JTI);
+        if (jti != null) {
+            Entrada entrada = jtis.get(jti.toString());
+            if (entrada != null && entrada.expiraEn > ahora) {
+                return "jti";
+            }
+        }
+        Object username = claims.get(UserAuthenticationConverter.USERNAME);
+        if (username != null && !usuarios.isEmpty()) {
+            Entrada entrada = usuarios.get(username.toString());
+            if (entrada != null && entrada.expiraEn > ahora && emitido(claims) <= entrada.valor) {
+                return "usuario";
+            }
+        }
+        return null;
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("jti", jtis.size());
+        resultado.put("usuarios", usuarios.size());
+        resultado.put("cubetas", cubetasJti.size() + cubetasUsuario.size());
+        return resultado;
+    }
+
+    public int getJtiRevocados() {
+        return jtis.size();
+    }
+
+    public int getUsuariosRevocados() {
+        return usuarios.size();
+    }
+
+    private long emitido(Map<String, ?> claims) {
+        Vigencia vigencia = claims.get(AccessTokenConverter.CLIENT_ID) != null
+                ? vigencias.get(claims.get(AccessTokenConverter.CLIENT_ID).toString()) : null;
+        if (vigencia == null) {
+            return exp(claims) - vigenciaMaxima;
+        }
+        boolean refreshToken = claims.containsKey(JwtAccessTokenConverter.ACCESS_TOKEN_ID);
+        return exp(claims) - (refreshToken ? vigencia.refresh : vigencia.access);
+    }
+
+    private void agregar(ConcurrentMap<String, Entrada> entradas, ConcurrentSkipListMap<Long, Set<String>> cubetas,
+                         String llave, long valor, long expiraEn) {
+        entradas.merge(llave, new Entrada(valor, expiraEn), (anterior, nueva) -> nueva.valor >= anterior.valor ? nueva : anterior);
+        cubetas.computeIfAbsent(expiraEn / cubetaSegundos, cubeta -> ConcurrentHashMap.newKeySet()).add(llave);
+        cambios.set(true);
+    }
+
+    /**
+     * Elimina las cubetas que ya vencieron, una llave que se revocó otra vez después se conserva
+     * por que su entrada actual vence en una cubeta posterior
+     */
+    void barrer() {
+        long ahora = ahora();
+        barrer(jtis, cubetasJti, ahora);
+        barrer(usuarios, cubetasUsuario, ahora);
+    }
+
+    private void barrer(ConcurrentMap<String, Entrada> entradas, ConcurrentSkipListMap<Long, Set<String>> cubetas, long ahora) {
+        NavigableMap<Long, Set<String>> vencidas = cubetas.headMap(ahora / cubetaSegundos, false);
+        for (Map.Entry<Long, Set<String>> cubeta : vencidas.entrySet()) {
+            for (String llave : cubeta.getValue()) {
+                entradas.computeIfPresent(llave, (k, entrada) -> entrada.expiraEn <= ahora ? null : entrada);
+            }
+            cubetas.remove(cubeta.getKey(), cubeta.getValue());
+            cambios.set(true);
+        }
+    }
+
+    private void barrerYGuardar() {
+        try {
+            barrer();
+            if (cambios.compareAndSet(true, false)) {
+                guardar();
+            }
+        } catch (Exception e) {
+            log.error("No se pudo barrer o guardar el registro de tokens revocados", e);
+        }
+    }
+
+    /**
+     * Escribe las revocaciones vigentes en un archivo temporal y lo mueve sobre el snapshot,
+     * así un reinicio a la mitad de la escritura no deja un snapshot incompleto
+     */
+    void guardar() throws IOException {
+        if (archivo.isEmpty()) {
+            return;
+        }
+        Path destino = Paths.get(archivo);
+        if (destino.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(destino.toAbsolutePath().getParent());
+        }
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+            salida.writeInt(VERSION_SNAPSHOT);
+            escribir(salida, TIPO_JTI, jtis);
+            escribir(salida, TIPO_USUARIO, usuarios);
+            salida.writeByte(0);
+        }
+        try {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void escribir(DataOutputStream salida, byte tipo, Map<String, Entrada> entradas) throws IOException {
+        long ahora = ahora();
+        for (Map.Entry<String, Entrada> entrada : entradas.entrySet()) {
+            if (entrada.getValue().expiraEn > ahora) {
+                salida.writeByte(tipo);
+                salida.writeUTF(entrada.getKey());
+                salida.writeLong(entrada.getValue().valor);
+                salida.writeLong(entrada.getValue().expiraEn);
+            }
+        }
+    }
+
+    private void restaurar() {
+        if (archivo.isEmpty() || !Files.exists(Paths.get(archivo))) {
+            return;
+        }
+        long ahora = ahora();
+        int restaurados = 0;
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(archivo))))) {
+            if (entrada.readInt() != VERSION_SNAPSHOT) {
+                log.warn("El snapshot de tokens revocados {} tiene otra versión, se ignora", archivo);
+                return;
+            }
+            for (byte tipo = entrada.readByte(); tipo != 0; tipo = entrada.readByte()) {
+                String llave = entrada.readUTF();
+                long valor = entrada.readLong();
+                long expiraEn = entrada.readLong();
+                if (expiraEn <= ahora) {
+                    continue;
+                }
+                if (tipo == TIPO_JTI) {
+                    agregar(jtis, cubetasJti, llave, valor, expiraEn);
+                } else {
+                    agregar(usuarios, cubetasUsuario, llave, valor, expiraEn);
+                }
+                restaurados++;
+            }
+            cambios.set(false);
+            log.info("Se restauraron {} revocaciones de {}", restaurados, archivo);
+        } catch (IOException e) {
+            log.error(String.format("No se pudo leer el snapshot de tokens revocados %s", archivo), e);
+        }
+    }
+
+    @PreDestroy
+    public void detener() throws InterruptedException {
+        barrido.shutdown();
+        barrido.awaitTermination(5, TimeUnit.SECONDS);
+        try {
+            guardar();
+        } catch (IOException e) {
+            log.error(String.format("No se pudo guardar el snapshot de tokens revocados %s", archivo), e);
+        }
+    }
+
+    private static long exp(Map<String, ?> claims) {
+        Object exp = claims.get(AccessTokenConverter.EXP);
+        return exp instanceof Number ? ((Number) exp).longValue() : 0;
+    }
+
+    private static long ahora() {
+        return System.currentTimeMillis() / 1000L;
+    }
+
+    /**
+     * valor = exp del token para los jti, hora de la revocación para los usuarios
+     * expiraEn = segundos epoch en que la entrada ya no es necesaria
+     */
+    private static final class Entrada {
+        private final long valor;
+        private final long expiraEn;
+
+        private Entrada(long valor, long expiraEn) {
+            this.valor = valor;
+            this.expiraEn = expiraEn;
+        }
+    }
+
+    private static final class Vigencia {
+        private final long access;
+        private final long refresh;
+
+        private Vigencia(long access, long refresh) {
+            this.access = access;
+            this.refresh = refresh;
+        }
+    }
+}
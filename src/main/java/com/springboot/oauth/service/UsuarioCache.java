@@ -0,0 +1,154 @@
+package com.springboot.oauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+@Component
+public class UsuarioCache {
+
+    /**
+     * Cache local de los usuarios que se obtienen del microservicio-administrador con
+     * UsuarioFeignClient.findByUsername, en los picos de login los mismos operadores
+     * inician sesión una y otra vez y cada login pagaba una llamada HTTP completa.
+     *
+     * usuarios.cache.maximo = número máximo de usuarios, al superarse se desalojan los menos usados
+     * usuarios.cache.ttl-segundos = tiempo de vida de cada usuario desde que se guardó
+     */
+    private final Cache<String, AdministradorEntity> usuarios;
+
+    /**
+     * Último valor conocido de cada usuario, se conserva más tiempo que la cache principal y solo
+     * se utiliza cuando el microservicio-administrador no responde (ver UsuarioService.findByUsername)
+     * para que los logins sigan funcionando durante una caída corta.
+     *
+     * usuarios.cache.obsoleto-segundos = tiempo máximo que se acepta un usuario obsoleto desde
+     * que se obtuvo del microservicio-administrador, 0 desactiva este respaldo
+     */
+    private final Cache<String, AdministradorEntity> ultimosConocidos;
+
+    /**
+     * Las búsquedas concurrentes del mismo username que no están en la cache comparten
+     * una sola llamada remota, no se utiliza Cache.get(llave, funcion) de Caffeine por que
+     * mantiene bloqueado el segmento del mapa durante toda la llamada HTTP
+     */
+    private final SingleFlight<String, AdministradorEntity> busquedas = new SingleFlight<>();
+
+    /**
+     * Marca de cada carga remota en curso por username, guardar e invalidar la quitan y la
+     * carga solo guarda su resultado si su marca sigue ahí, así la respuesta de un GET que salió
+     * antes de un update no reemplaza al usuario que se guardó después (por ejemplo un usuario
+     * recién deshabilitado). Solo contiene los usernames con una carga en curso.
+     */
+    private final ConcurrentMap<String, Object> cargas = new ConcurrentHashMap<>();
+
+    public UsuarioCache(@Value("${usuarios.cache.maximo:10000}") long maximo,
+                        @Value("${usuarios.cache.ttl-segundos:300}") long ttlSegundos,
+                        @Value("${usuarios.cache.obsoleto-segundos:900}") long obsoletoSegundos) {
+        this.usuarios = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+                .recordStats()
+                .build();
+        this.ultimosConocidos = Caffeine.newBuilder()
+                .maximumSize(obsoletoSegundos > 0 ? maximo : 0)
+                .expireAfterWrite(Duration.ofSeconds(obsoletoSegundos))
+                .build();
+    }
+
+    public AdministradorEntity obtener(String username, Function<String, AdministradorEntity> cargar) {
+        AdministradorEntity usuario = usuarios.getIfPresent(username);
+        if (usuario != null) {
+            return usuario;
+        }
+        return busquedas.ejecutar(username, () -> {
+            Object marca = new Object();
+            cargas.put(username, marca);
+            AdministradorEntity cargado;
+            try {
+                cargado = cargar.apply(username);
+            } catch (RuntimeException | Error e) {
+                cargas.remove(username, marca);
+                throw e;
+            }
+            // la comparación y el put se realizan con el lock de la llave en cargas
+            cargas.computeIfPresent(username, (llave, actual) -> {
+                if (actual != marca) {
+                    return actual;
+                }
+                if (cargado != null) {
+                    usuarios.put(username, cargado);
+                    ultimosConocidos.put(username, cargado);
+                }
+                return null;
+            });
+            return cargado;
+        });
+    }
+
+    /**
+     * Se utiliza después de UsuarioService.update para que los cambios de enabled e intentos
+     * se vean de inmediato en el siguiente login
+     */
+    public void guardar(AdministradorEntity usuario) {
+        if (usuario != null && usuario.getUsername() != null) {
+            cargas.compute(usuario.getUsername(), (llave, marca) -> {
+                usuarios.put(llave, usuario);
+                ultimosConocidos.put(llave, usuario);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Regresa el último valor conocido del usuario o null si ya pasó usuarios.cache.obsoleto-segundos
+     */
+    public AdministradorEntity ultimoConocido(String username) {
+        return ultimosConocidos.getIfPresent(username);
+    }
+
+    /**
+     * Al invalidar también se descarta el último valor conocido, el usuario cambió
+     * y su valor anterior ya no se debe utilizar
+     */
+    public void invalidar(String username) {
+        cargas.compute(username, (llave, marca) -> {
+            usuarios.invalidate(llave);
+            ultimosConocidos.invalidate(llave);
+            return null;
+        });
+    }
+
+    public void invalidarTodos() {
+        cargas.clear();
+        usuarios.invalidateAll();
+        ultimosConocidos.invalidateAll();
+    }
+
+    public Cache<String, AdministradorEntity> getCache() {
+        return usuarios;
+    }
+
+    public Map<String, Object> estadisticas() {
+        CacheStats stats = usuarios.stats();
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("tamanio", usuarios.estimatedSize());
+        resultado.put("ultimosConocidos", ultimosConocidos.estimatedSize());
+        resultado.put("aciertos", stats.hitCount());
+        resultado.put("fallos", stats.missCount());
+        resultado.put("tasaAciertos", stats.hitRate());
+        resultado.put("desalojos", stats.evictionCount());
+        resultado.put("busquedasEnVuelo", busquedas.llamadasEnVuelo());
+        return resultado;
+    }
+}
@@ -1,30 +1,80 @@
 package com.springboot.oauth.service;
 
 import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import com.springboot.oauth.client.CircuitoAdministradorConfig;
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
 import com.springboot.oauth.client.UsuarioFeignClient;
+import com.springboot.oauth.event.AuditoriaAutenticacion;
+import com.springboot.oauth.event.EventoAutenticacion;
+import com.springboot.oauth.metrics.MetricasOauth;
+import com.springboot.oauth.security.ServicioSaturadoException;
 import feign.FeignException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreaker;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreakerFactory;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @Service
-public class UsuarioService implements IUsuarioService,UserDetailsService {
+public class UsuarioService implements IUsuarioService,UserDetailsService,UserDetailsPasswordService {
 
     private static final Logger log = LoggerFactory.getLogger(UsuarioService.class);
 
     @Autowired
     private UsuarioFeignClient usuarioClient;
 
+    @Autowired
+    private UsuarioSnapshot usuarioSnapshot;
+
+    @Autowired
+    private UsuarioCache usuarioCache;
+
+    @Autowired
+    private UsuariosInexistentesCache usuariosInexistentes;
+
+    @Autowired
+    private UsuariosModificados usuariosModificados;
+
+    @Autowired
+    private MetricasOauth metricas;
+
+    @Autowired
+    private AuditoriaAutenticacion auditoria;
+
+    @Autowired
+    private CircuitoAdministradorConfig circuitoConfig;
+
+    @Autowired
+    private ClusterInvalidaciones cluster;
+
+    private CircuitBreaker circuito;
+
+    /**
+     * Las actualizaciones concurrentes del mismo id se colapsan en una sola escritura
+     * con el último valor recibido
+     */
+    private final EscrituraColapsada<Integer, AdministradorEntity, AdministradorEntity> actualizaciones = new EscrituraColapsada<>();
+
+    @Autowired
+    public void setCircuitBreakerFactory(CircuitBreakerFactory<?, ?> circuitBreakerFactory) {
+        this.circuito = circuitBreakerFactory.create(CircuitoAdministradorConfig.CIRCUITO);
+    }
+
     /**
      * Este es el primer método que se configuro para realizar la autenticación
      *
@@ -32,33 +82,146 @@ public class UsuarioService implements IUsuarioService,UserDetailsService {
      *
      * Esta implementación se encarga de autenticar de obtener al usuario por el username
      * independientemente si se esta utilizando JPA, JDBC etc
+     *
+     * NOTA: el usuario cargado y el usuario no encontrado se registran en AuditoriaAutenticacion
+     * en lugar de escribir en el log desde el hilo de la petición
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         try {
-            AdministradorEntity usuario = usuarioClient.findByUsername(username);
+            AdministradorEntity usuario = findByUsername(username);
 
             List<GrantedAuthority> authorities = usuario.getRoles()
                     .stream()
                     .map(role -> new SimpleGrantedAuthority(role.getNombre()))
-                    .peek(authority -> log.info("Rol e : " + authority.getAuthority()))
                     .collect(Collectors.toList());
 
-            log.info("Usuario autenticado : " + username);
+            auditoria.publicar(EventoAutenticacion.USUARIO_CARGADO, username, authorities.size());
             return new User(usuario.getUsername(), usuario.getPassword(), usuario.getEnabled(), true, true, true, authorities);
-        } catch (FeignException e) {
-            log.error("Error en el login, no existe el usuario '" + username + "' en el sistema");
+        } catch (FeignException.NotFound e) {
+            auditoria.publicar(EventoAutenticacion.USUARIO_NO_ENCONTRADO, username);
             throw new UsernameNotFoundException("Error en el login, no existe el usuario '" + username + "' en el sistema");
         }
     }
 
+    /**
+     * Primero se busca el usuario en el snapshot de la petición actual, de esta forma
+     * el token enhancer y los eventos de éxito/fracaso del login reutilizan el usuario
+     * obtenido en loadUserByUsername sin volver a llamar al microservicio-administrador,
+     * después se busca en UsuarioCache y solo si no existe se realiza la llamada remota
+     *
+     * Los usernames que el microservicio-administrador respondió como no encontrados se
+     * recuerdan en UsuariosInexistentesCache y se rechazan sin realizar la llamada remota
+     *
+     * La llamada remota pasa por el circuit breaker de CircuitoAdministradorConfig, si falla, tarda
+     * demasiado o el circuito está abierto se utiliza el último valor conocido del usuario de
+     * UsuarioCache, si tampoco existe se responde 503 con Retry-After (ServicioSaturadoException)
+     */
     @Override
     public AdministradorEntity findByUsername(String username) {
-        return usuarioClient.findByUsername(username);
+        AdministradorEntity usuario = usuarioSnapshot.obtener(username);
+        if (usuario == null) {
+            if (usuariosInexistentes.cortocircuitar(username)) {
+                throw new UsernameNotFoundException("Error en el login, no existe el usuario '" + username + "' en el sistema");
+            }
+            try {
+                usuario = usuarioCache.obtener(username, nombre -> circuito.run(
+                        () -> metricas.feign("findByUsername", () -> usuarioClient.findByUsername(nombre)),
+                        error -> { throw propagar(error); }));
+            } catch (FeignException.NotFound e) {
+                usuariosInexistentes.registrar(username);
+                metricas.usuarioInexistente();
+                throw e;
+            } catch (RuntimeException e) {
+                usuario = ultimoConocido(username, e);
+            }
+            usuarioSnapshot.guardar(usuario);
+        }
+        return usuario;
+    }
+
+    /**
+     * Sin último valor conocido una falla del microservicio-administrador (circuito abierto, pool
+     * de llamadas lleno, timeout, error de conexión o 5xx) se responde 503 con Retry-After, no como
+     * usuario inexistente para no contar un intento fallido de login por la falla
+     */
+    private AdministradorEntity ultimoConocido(String username, RuntimeException error) {
+        AdministradorEntity usuario = usuarioCache.ultimoConocido(username);
+        String motivo = error instanceof CallNotPermittedException ? "circuito_abierto"
+                : error instanceof RejectedExecutionException ? "pool_lleno"
+                : error instanceof ServicioSaturadoException ? "timeout" : "error";
+        if (usuario == null) {
+            if (error instanceof CallNotPermittedException || error instanceof RejectedExecutionException
+                    || error instanceof FeignException) {
+                throw new ServicioSaturadoException(circuitoConfig.getAbiertoSegundos());
+            }
+            throw error;
+        }
+        log.warn("El microservicio-administrador no respondió (" + motivo + "), se utiliza el último valor conocido del usuario '" + username + "'");
+        metricas.usuarioObsoleto(motivo);
+        return usuario;
+    }
+
+    /**
+     * El time limiter lanza TimeoutException que no es RuntimeException, se responde como saturación
+     */
+    private RuntimeException propagar(Throwable error) {
+        if (error instanceof TimeoutException) {
+            return new ServicioSaturadoException(circuitoConfig.getAbiertoSegundos());
+        }
+        if (error instanceof RuntimeException) {
+            return (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new IllegalStateException(error);
     }
 
+    /**
+     * Al actualizar el usuario se refresca la cache con la respuesta del
+     * microservicio-administrador para que los cambios de enabled e intentos
+     * se tomen en cuenta en el siguiente login, el usuario se marca en UsuariosModificados
+     * para que su siguiente refresh_token se valide con el microservicio-administrador,
+     * las demás instancias del cluster desalojan al usuario al recibir la invalidación
+     */
     @Override
     public AdministradorEntity update(AdministradorEntity usuario, Integer id) {
-        return usuarioClient.update(usuario,id);
+        usuariosModificados.marcar(usuario.getUsername());
+        AdministradorEntity actualizado;
+        try {
+            actualizado = actualizaciones.escribir(id, usuario, valor -> metricas.feign("update", () -> usuarioClient.update(valor, id)));
+        } catch (FeignException e) {
+            usuarioCache.invalidar(usuario.getUsername());
+            throw e;
+        }
+        if (actualizado != null) {
+            usuarioCache.guardar(actualizado);
+            usuarioSnapshot.guardar(actualizado);
+        } else {
+            usuarioCache.invalidar(usuario.getUsername());
+        }
+        cluster.usuarioActualizado(usuario.getUsername());
+        return actualizado;
+    }
+
+    /**
+     * Al cambiar el costo de BCrypt (security.bcrypt.costo) DaoAuthenticationProvider llama este
+     * método después de un login correcto con el password encriptado con el nuevo costo, se guarda
+     * en el microservicio-administrador y en caso de error el login continúa con el password anterior
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        try {
+            AdministradorEntity usuario = findByUsername(user.getUsername());
+            AdministradorEntity copia = new AdministradorEntity();
+            BeanUtils.copyProperties(usuario, copia);
+            copia.setPassword(newPassword);
+            update(copia, copia.getId());
+            return User.withUserDetails(user).password(newPassword).build();
+        } catch (FeignException e) {
+            log.error("No se pudo actualizar el password del usuario '" + user.getUsername() + "'", e);
+            return user;
+        }
     }
 }
@@ -0,0 +1,41 @@
+package com.springboot.oauth.service;
+
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+@Component
+public class UsuarioSnapshot {
+
+    private static final String ATRIBUTO = UsuarioSnapshot.class.getName() + ".USUARIO";
+
+    /**
+     * Esta clase guarda el AdministradorEntity obtenido del microservicio-administrador
+     * como atributo de la petición HTTP actual, para que durante un mismo grant password
+     * UsuarioService.loadUserByUsername, InfoAdicionalToken.enhance y
+     * AuthenticationSuccessErrorHandler compartan el mismo usuario y solo se realice
+     * una llamada remota por login en lugar de tres.
+     *
+     * NOTA: al ser un atributo de la petición se descarta automáticamente al terminar
+     * la petición, fuera de una petición HTTP no se guarda nada
+     */
+    public AdministradorEntity obtener(String username) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null || username == null) {
+            return null;
+        }
+        AdministradorEntity usuario = (AdministradorEntity) attributes.getAttribute(ATRIBUTO, RequestAttributes.SCOPE_REQUEST);
+        if (usuario != null && username.equals(usuario.getUsername())) {
+            return usuario;
+        }
+        return null;
+    }
+
+    public void guardar(AdministradorEntity usuario) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && usuario != null) {
+            attributes.setAttribute(ATRIBUTO, usuario, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+}
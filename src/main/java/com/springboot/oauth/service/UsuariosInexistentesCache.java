@@ -0,0 +1,77 @@
+package com.springboot.oauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class UsuariosInexistentesCache {
+
+    /**
+     * Cache negativa de los usernames que el microservicio-administrador respondió como
+     * no encontrados (404), el tráfico de credential stuffing utiliza usernames aleatorios
+     * y cada uno costaba dos llamadas remotas fallidas, con esta cache se rechazan antes
+     * de cualquier llamada Feign o validación con BCrypt.
+     *
+     * usuarios.inexistentes.maximo = número máximo de usernames que se recuerdan
+     * usuarios.inexistentes.ttl-segundos = tiempo que se recuerda un username inexistente,
+     * se mantiene corto para que un usuario recién creado pueda iniciar sesión pronto
+     */
+    private final Cache<String, Boolean> inexistentes;
+
+    private final AtomicLong cortocircuitos = new AtomicLong();
+
+    public UsuariosInexistentesCache(@Value("${usuarios.inexistentes.maximo:100000}") long maximo,
+                                     @Value("${usuarios.inexistentes.ttl-segundos:60}") long ttlSegundos) {
+        this.inexistentes = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+                .recordStats()
+                .build();
+    }
+
+    public void registrar(String username) {
+        inexistentes.put(username, Boolean.TRUE);
+    }
+
+    /**
+     * Regresa true si el username se sabe que no existe, en ese caso se cuenta
+     * como una búsqueda que no llego al microservicio-administrador
+     */
+    public boolean cortocircuitar(String username) {
+        if (username != null && inexistentes.getIfPresent(username) != null) {
+            cortocircuitos.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void invalidar(String username) {
+        inexistentes.invalidate(username);
+    }
+
+    public void invalidarTodos() {
+        inexistentes.invalidateAll();
+    }
+
+    public long getCortocircuitos() {
+        return cortocircuitos.get();
+    }
+
+    public Cache<String, Boolean> getCache() {
+        return inexistentes;
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("tamanio", inexistentes.estimatedSize());
+        resultado.put("cortocircuitos", cortocircuitos.get());
+        return resultado;
+    }
+}
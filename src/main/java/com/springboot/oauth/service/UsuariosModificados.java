@@ -0,0 +1,116 @@
+package com.springboot.oauth.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Component
+public class UsuariosModificados {
+
+    private static final Logger log = LoggerFactory.getLogger(UsuariosModificados.class);
+
+    /**
+     * Vista local de los usuarios que cambiaron desde que se emitió su refresh token, el grant
+     * refresh_token solo consulta al microservicio-administrador cuando el usuario aparece aquí,
+     * el resto de los refresh se resuelven con los claims ya validados del refresh token.
+     *
+     * Se marca un usuario al actualizarlo (UsuarioService.update), al bloquearlo por intentos
+     * fallidos y al desalojarlo de la cache desde UsuarioCacheController, al desalojar toda la
+     * cache se marcan todos los usuarios. La marca se elimina cuando un refresh del usuario se
+     * valida correctamente con el microservicio-administrador.
+     *
+     * usuarios.modificados.ttl-segundos = tiempo que se recuerda una marca, debe ser mayor o igual
+     * a la vigencia del refresh token de los clientes para que ningún refresh token emitido antes
+     * del cambio pueda utilizar el camino local
+     * usuarios.modificados.maximo = número máximo de usuarios marcados
+     *
+     * NOTA: las marcas son secuencias y no horas para que una marca que ocurre mientras se valida
+     * el usuario no se elimine por error
+     */
+    private final Cache<String, Long> marcas;
+
+    private final Cache<String, Long> verificados;
+
+    private final AtomicLong secuencia = new AtomicLong();
+
+    private final long ttlMs;
+
+    private volatile long marcaGlobal;
+
+    private volatile long marcaGlobalEn;
+
+    public UsuariosModificados(@Value("${usuarios.modificados.ttl-segundos:3600}") long ttlSegundos,
+                               @Value("${usuarios.modificados.maximo:100000}") long maximo) {
+        this.ttlMs = Duration.ofSeconds(ttlSegundos).toMillis();
+        this.marcas = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+                .build();
+        this.verificados = Caffeine.newBuilder()
+                .maximumSize(maximo)
+                .expireAfterWrite(Duration.ofSeconds(ttlSegundos))
+                .build();
+    }
+
+    /**
+     * AuthorizationServerConfig valida al iniciar el ttl contra la vigencia más larga de los
+     * refresh token de sus clientes, con un ttl menor un refresh token emitido antes de un cambio
+     * del usuario vuelve a utilizar el camino local cuando vence su marca
+     */
+    public void validarTtl(long refreshTokenSegundos) {
+        if (ttlMs < Duration.ofSeconds(refreshTokenSegundos).toMillis()) {
+            log.warn(String.format("usuarios.modificados.ttl-segundos=%d es menor a la vigencia de %d segundos del refresh token"
+                    + " más largo, un refresh token emitido antes de modificar un usuario puede omitir la validación"
+                    + " con el microservicio-administrador", Duration.ofMillis(ttlMs).getSeconds(), refreshTokenSegundos));
+        }
+    }
+
+    public void marcar(String username) {
+        if (username != null) {
+            marcas.put(username, secuencia.incrementAndGet());
+        }
+    }
+
+    public void marcarTodos() {
+        marcas.invalidateAll();
+        verificados.invalidateAll();
+        marcaGlobal = secuencia.incrementAndGet();
+        marcaGlobalEn = System.currentTimeMillis();
+    }
+
+    /**
+     * Regresa la posición actual de las marcas, se debe tomar antes de validar al usuario
+     * con el microservicio-administrador y pasarla a verificado
+     */
+    public long posicion() {
+        return secuencia.get();
+    }
+
+    public boolean requiereVerificacion(String username) {
+        if (marcas.getIfPresent(username) != null) {
+            return true;
+        }
+        if (marcaGlobal > 0 && System.currentTimeMillis() - marcaGlobalEn < ttlMs) {
+            Long verificado = verificados.getIfPresent(username);
+            return verificado == null || verificado < marcaGlobal;
+        }
+        return false;
+    }
+
+    /**
+     * Elimina la marca del usuario después de validarlo con el microservicio-administrador,
+     * solo se eliminan las marcas anteriores a la posición que se tomó antes de validarlo
+     */
+    public void verificado(String username, long posicion) {
+        marcas.asMap().computeIfPresent(username, (llave, marca) -> marca <= posicion ? null : marca);
+        if (marcaGlobal > 0) {
+            verificados.asMap().merge(username, posicion, Math::max);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.springboot.oauth.benchmark;
+
+import ch.qos.logback.classic.Level;
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import com.springboot.oauth.client.UsuarioFeignClient;
+import com.springboot.oauth.event.AuditoriaAutenticacion;
+import com.springboot.oauth.metrics.MetricasOauth;
+import com.springboot.oauth.security.InfoAdicionalToken;
+import com.springboot.oauth.security.JwtEncoderRapido;
+import com.springboot.oauth.security.JwtKidAccessTokenConverter;
+import com.springboot.oauth.security.LlavesJwt;
+import com.springboot.oauth.security.LlavesJwtProperties;
+import com.springboot.oauth.security.TokenVerificadoCache;
+import com.springboot.oauth.service.UsuarioCache;
+import com.springboot.oauth.service.UsuarioService;
+import com.springboot.oauth.service.UsuarioSnapshot;
+import com.springboot.oauth.service.UsuariosInexistentesCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreaker;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Arma los componentes del pipeline del token sin levantar el contexto de Spring, el
+ * microservicio-administrador se reemplaza por un UsuarioFeignClient que regresa siempre
+ * el mismo usuario, de esta forma cada benchmark mide solo el código local.
+ *
+ * NOTA: los logs se limitan a WARN para que la salida de consola no se mida junto con el código
+ */
+final class Escenario {
+
+    static final String USERNAME = "juan";
+
+    static final String PASSWORD = "12345";
+
+    static final String CLIENTE = "frontendapp";
+
+    static {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    private Escenario() {
+    }
+
+    static AdministradorEntity usuario(String passwordEncriptado) {
+        AdministradorEntity usuario = new AdministradorEntity();
+        usuario.setId(1);
+        usuario.setUsername(USERNAME);
+        usuario.setPassword(passwordEncriptado);
+        usuario.setEnabled(true);
+        usuario.setNombre("Juan");
+        usuario.setApellido("Pérez");
+        usuario.setEmail("juan@correo.com");
+        usuario.setIntentos(0);
+        ReflectionTestUtils.invokeSetterMethod(usuario, "roles", roles("ROLE_ADMIN", "ROLE_USER"), List.class);
+        return usuario;
+    }
+
+    /**
+     * El tipo de los roles se toma del tipo genérico de AdministradorEntity.getRoles
+     * para no depender del nombre de la entidad de commons-usuarios
+     */
+    private static List<Object> roles(String... nombres) {
+        try {
+            Method getRoles = AdministradorEntity.class.getMethod("getRoles");
+            Class<?> tipo = (Class<?>) ((ParameterizedType) getRoles.getGenericReturnType()).getActualTypeArguments()[0];
+            List<Object> roles = new ArrayList<>();
+            for (String nombre : nombres) {
+                Object role = tipo.getDeclaredConstructor().newInstance();
+                ReflectionTestUtils.invokeSetterMethod(role, "nombre", nombre);
+                roles.add(role);
+            }
+            return roles;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static UsuarioFeignClient feignClient(AdministradorEntity usuario) {
+        return new UsuarioFeignClient() {
+            @Override
+            public AdministradorEntity findByUsername(String username) {
+                return usuario;
+            }
+
+            @Override
+            public AdministradorEntity update(AdministradorEntity usuarios, Integer id) {
+                return usuarios;
+            }
+        };
+    }
+
+    static UsuarioService usuarioService(UsuarioFeignClient feignClient, UsuarioCache usuarioCache) {
+        UsuarioService usuarioService = new UsuarioService();
+        ReflectionTestUtils.setField(usuarioService, "usuarioClient", feignClient);
+        ReflectionTestUtils.setField(usuarioService, "usuarioSnapshot", new UsuarioSnapshot());
+        ReflectionTestUtils.setField(usuarioService, "usuarioCache", usuarioCache);
+        ReflectionTestUtils.setField(usuarioService, "usuariosInexistentes", new UsuariosInexistentesCache(100000, 60));
+        ReflectionTestUtils.setField(usuarioService, "metricas", MetricasOauth.NINGUNA);
+        ReflectionTestUtils.setField(usuarioService, "circuito", SIN_CIRCUITO);
+        ReflectionTestUtils.setField(usuarioService, "auditoria", AUDITORIA);
+        return usuarioService;
+    }
+
+    /**
+     * Los eventos se publican en el anillo como en la aplicación, el logger AUDITORIA queda
+     * debajo del nivel WARN y el consumidor solo los descarta
+     */
+    private static final AuditoriaAutenticacion AUDITORIA = auditoria();
+
+    private static AuditoriaAutenticacion auditoria() {
+        AuditoriaAutenticacion auditoria = new AuditoriaAutenticacion(8192, AuditoriaAutenticacion.Politica.DESCARTAR, 256, 5);
+        auditoria.iniciar();
+        return auditoria;
+    }
+
+    /**
+     * El circuit breaker ejecuta la llamada en otro hilo, en los benchmarks se ejecuta directo
+     * para medir solo el código de UsuarioService
+     */
+    private static final CircuitBreaker SIN_CIRCUITO = new CircuitBreaker() {
+        @Override
+        public <T> T run(Supplier<T> toRun, Function<Throwable, T> fallback) {
+            try {
+                return toRun.get();
+            } catch (RuntimeException e) {
+                return fallback.apply(e);
+            }
+        }
+    };
+
+    static InfoAdicionalToken infoAdicionalToken(UsuarioService usuarioService) {
+        InfoAdicionalToken infoAdicionalToken = new InfoAdicionalToken();
+        ReflectionTestUtils.setField(infoAdicionalToken, "usuarioService", usuarioService);
+        ReflectionTestUtils.setField(infoAdicionalToken, "metricas", MetricasOauth.NINGUNA);
+        return infoAdicionalToken;
+    }
+
+    /**
+     * llaveRsa: null firma con la llave simétrica como en AuthorizationServerConfig, si no firma
+     * con la llave RSA y su kid, los converters que deben leer los mismos tokens reciben la misma llave
+     * tokensVerificadosTtl: 0 desactiva TokenVerificadoCache, cada decode valida la firma
+     */
+    static JwtKidAccessTokenConverter converter(LlavesJwtProperties.Llave llaveRsa, boolean encoderRapido, long tokensVerificadosTtl) {
+        LlavesJwtProperties properties = new LlavesJwtProperties();
+        if (llaveRsa != null) {
+            properties.setLlaves(Collections.singletonList(llaveRsa));
+        }
+        JwtKidAccessTokenConverter converter = new JwtKidAccessTokenConverter(new LlavesJwt(properties), true,
+                new TokenVerificadoCache(100000, tokensVerificadosTtl));
+        if (encoderRapido) {
+            converter.setEncoderRapido(new JwtEncoderRapido());
+        }
+        converter.setSigningKey(Base64.getEncoder().encodeToString(CLIENTE.getBytes()));
+        // spring llama afterPropertiesSet al crear el bean, crea el verifier de la llave simétrica
+        try {
+            converter.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        return converter;
+    }
+
+    static LlavesJwtProperties.Llave llaveRsa() {
+        try {
+            KeyPairGenerator generador = KeyPairGenerator.getInstance("RSA");
+            generador.initialize(2048);
+            KeyPair par = generador.generateKeyPair();
+            LlavesJwtProperties.Llave llave = new LlavesJwtProperties.Llave();
+            llave.setKid("benchmark");
+            llave.setPrivateKey(Base64.getEncoder().encodeToString(par.getPrivate().getEncoded()));
+            return llave;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static DefaultOAuth2AccessToken accessToken() {
+        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        token.setScope(new HashSet<>(Arrays.asList("read", "write")));
+        token.setExpiration(new Date(System.currentTimeMillis() + 3600_000L));
+        return token;
+    }
+
+    static OAuth2Authentication autenticacion(UserDetails usuario) {
+        Map<String, String> parametros = new HashMap<>();
+        parametros.put("grant_type", "password");
+        parametros.put("username", USERNAME);
+        OAuth2Request request = new OAuth2Request(parametros, CLIENTE, null, true,
+                new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+        UsernamePasswordAuthenticationToken autenticado = new UsernamePasswordAuthenticationToken(usuario, null, usuario.getAuthorities());
+        return new OAuth2Authentication(request, autenticado);
+    }
+}
@@ -0,0 +1,116 @@
+package com.springboot.oauth.benchmark;
+
+import com.springboot.oauth.security.InfoAdicionalToken;
+import com.springboot.oauth.security.JwtKidAccessTokenConverter;
+import com.springboot.oauth.security.LlavesJwtProperties;
+import com.springboot.oauth.service.UsuarioCache;
+import com.springboot.oauth.service.UsuarioService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cada etapa de la emisión y validación del token por separado y la cadena completa
+ * de AuthorizationServerConfig (InfoAdicionalToken + JwtAccessTokenConverter)
+ *
+ * firma: hmac o rsa
+ * encoderRapido: JwtEncoderRapido o la serialización original
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenBenchmark {
+
+    @Param({"hmac", "rsa"})
+    private String firma;
+
+    @Param({"true", "false"})
+    private boolean encoderRapido;
+
+    private InfoAdicionalToken infoAdicionalToken;
+
+    private JwtKidAccessTokenConverter converter;
+
+    private TokenEnhancerChain tokenEnhancerChain;
+
+    private JwtTokenStore tokenStore;
+
+    private JwtTokenStore tokenStoreSinCache;
+
+    private OAuth2Authentication autenticacion;
+
+    private DefaultOAuth2AccessToken accessToken;
+
+    private DefaultOAuth2AccessToken accessTokenConInfo;
+
+    private String jwt;
+
+    @Setup
+    public void setup() {
+        UsuarioService usuarioService = Escenario.usuarioService(
+                Escenario.feignClient(Escenario.usuario("{noop}" + Escenario.PASSWORD)), new UsuarioCache(10000, 300, 900));
+        infoAdicionalToken = Escenario.infoAdicionalToken(usuarioService);
+        LlavesJwtProperties.Llave llaveRsa = "rsa".equals(firma) ? Escenario.llaveRsa() : null;
+        converter = Escenario.converter(llaveRsa, encoderRapido, 300);
+        tokenEnhancerChain = new TokenEnhancerChain();
+        tokenEnhancerChain.setTokenEnhancers(Arrays.asList(infoAdicionalToken, converter));
+        tokenStore = new JwtTokenStore(converter);
+        tokenStoreSinCache = new JwtTokenStore(Escenario.converter(llaveRsa, encoderRapido, 0));
+
+        autenticacion = Escenario.autenticacion(usuarioService.loadUserByUsername(Escenario.USERNAME));
+        accessToken = Escenario.accessToken();
+        accessTokenConInfo = (DefaultOAuth2AccessToken) infoAdicionalToken.enhance(Escenario.accessToken(), autenticacion);
+        jwt = converter.enhance(accessTokenConInfo, autenticacion).getValue();
+        // decodeSinCache debe medir la validación de la firma y no el rechazo del token
+        if (tokenStoreSinCache.readAccessToken(jwt) == null) {
+            throw new IllegalStateException("tokenStoreSinCache no puede leer el token del benchmark");
+        }
+    }
+
+    @Benchmark
+    public OAuth2AccessToken infoAdicional() {
+        return infoAdicionalToken.enhance(accessToken, autenticacion);
+    }
+
+    /**
+     * JwtAccessTokenConverter.enhance copia el token de entrada, se puede reutilizar el mismo
+     */
+    @Benchmark
+    public OAuth2AccessToken encode() {
+        return converter.enhance(accessTokenConInfo, autenticacion);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken decodeConCache() {
+        return tokenStore.readAccessToken(jwt);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken decodeSinCache() {
+        return tokenStoreSinCache.readAccessToken(jwt);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken cadenaCompleta() {
+        return tokenEnhancerChain.enhance(Escenario.accessToken(), autenticacion);
+    }
+}
@@ -0,0 +1,52 @@
+package com.springboot.oauth.benchmark;
+
+import com.springboot.oauth.service.UsuarioCache;
+import com.springboot.oauth.service.UsuarioService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UsuarioService.loadUserByUsername incluyendo la conversión de los roles a GrantedAuthority,
+ * conCache mide el login repetido de un usuario que ya está en UsuarioCache y sinCache el
+ * primer login donde se llama a UsuarioFeignClient (sin la latencia de red)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsuarioServiceBenchmark {
+
+    private UsuarioService usuarioService;
+
+    private UsuarioCache usuarioCache;
+
+    @Setup
+    public void setup() {
+        usuarioCache = new UsuarioCache(10000, 300, 900);
+        usuarioService = Escenario.usuarioService(Escenario.feignClient(Escenario.usuario("{noop}" + Escenario.PASSWORD)), usuarioCache);
+    }
+
+    @Benchmark
+    public UserDetails conCache() {
+        return usuarioService.loadUserByUsername(Escenario.USERNAME);
+    }
+
+    @Benchmark
+    public UserDetails sinCache() {
+        usuarioCache.invalidar(Escenario.USERNAME);
+        return usuarioService.loadUserByUsername(Escenario.USERNAME);
+    }
+}
@@ -0,0 +1,170 @@
+package com.springboot.oauth.cluster;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.oauth.controller.ClusterController;
+import com.springboot.oauth.service.IntentosLoginTracker;
+import com.springboot.oauth.service.TokensRevocados;
+import com.springboot.oauth.service.UsuarioCache;
+import com.springboot.oauth.service.UsuariosInexistentesCache;
+import com.springboot.oauth.service.UsuariosModificados;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Envía los lotes de una instancia de ClusterInvalidaciones con cluster.peers fijo a un
+ * HttpServer que los entrega a un ClusterController con otra instancia de ClusterInvalidaciones,
+ * sin levantar el contexto de spring
+ */
+class ClusterInvalidacionesTest {
+
+	private static final String SECRETO = "secreto-prueba";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final List<List<MensajeCluster>> lotes = Collections.synchronizedList(new ArrayList<>());
+
+	private final TokensRevocados tokensRevocados = mock(TokensRevocados.class);
+
+	private final IntentosLoginTracker intentosLoginTracker = mock(IntentosLoginTracker.class);
+
+	private HttpServer peer;
+
+	private ClusterController controller;
+
+	private ClusterInvalidaciones emisor;
+
+	@BeforeEach
+	void iniciar() throws IOException {
+		ClusterInvalidaciones receptor = new ClusterInvalidaciones(SECRETO, "");
+		controller = new ClusterController();
+		ReflectionTestUtils.setField(controller, "cluster", receptor);
+		ReflectionTestUtils.setField(controller, "usuarioCache", mock(UsuarioCache.class));
+		ReflectionTestUtils.setField(controller, "usuariosInexistentes", mock(UsuariosInexistentesCache.class));
+		ReflectionTestUtils.setField(controller, "usuariosModificados", mock(UsuariosModificados.class));
+		ReflectionTestUtils.setField(controller, "intentosLoginTracker", intentosLoginTracker);
+		ReflectionTestUtils.setField(controller, "tokensRevocados", tokensRevocados);
+
+		peer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+		peer.createContext(ClusterInvalidaciones.RUTA, this::recibir);
+		peer.start();
+
+		emisor = emisor(SECRETO);
+	}
+
+	private ClusterInvalidaciones emisor(String secreto) {
+		ClusterInvalidaciones emisor = new ClusterInvalidaciones(secreto, "http://127.0.0.1:" + peer.getAddress().getPort());
+		ReflectionTestUtils.setField(emisor, "restTemplateBuilder", new RestTemplateBuilder());
+		ReflectionTestUtils.setField(emisor, "loteMs", 60000L);
+		ReflectionTestUtils.setField(emisor, "loteMaximo", 500);
+		ReflectionTestUtils.setField(emisor, "colaMaxima", 100);
+		ReflectionTestUtils.setField(emisor, "timeoutMs", 5000L);
+		emisor.iniciar();
+		return emisor;
+	}
+
+	@AfterEach
+	void detener() throws InterruptedException {
+		emisor.detener();
+		peer.stop(0);
+	}
+
+	@Test
+	void losIntentosDeUnUsuarioSeSumanHastaSuReinicio() {
+		emisor.intentoFallido("juan");
+		emisor.intentoFallido("juan");
+		emisor.intentoFallido("juan");
+		emisor.intentosReiniciados("juan");
+		emisor.intentoFallido("juan");
+		emisor.intentoFallido("ana");
+		emisor.usuarioActualizado("pedro");
+
+		emisor.enviar();
+
+		assertEquals(1, lotes.size());
+		assertEquals(Arrays.asList("INTENTOS juan 3", "INTENTOS_REINICIO juan 0", "INTENTOS juan 1",
+				"INTENTOS ana 1", "USUARIO_ACTUALIZADO pedro 0"), describir(lotes.get(0)));
+		assertEquals(0, emisor.getPendientes());
+		assertEquals(5, emisor.getEnviados());
+		assertEquals(0, emisor.getFallidos());
+		verify(intentosLoginTracker).aplicarIntentos("juan", 3);
+		verify(intentosLoginTracker).aplicarIntentos("juan", 1);
+		verify(intentosLoginTracker).aplicarReinicio("juan");
+	}
+
+	@Test
+	void lasRevocacionesNoSeDescartanConLaColaLlenaYSeEnvianPrimero() {
+		ReflectionTestUtils.setField(emisor, "colaMaxima", 1);
+		long exp = System.currentTimeMillis() / 1000 + 3600;
+		emisor.intentoFallido("a");
+		emisor.intentoFallido("b");
+		emisor.intentoFallido("c");
+		emisor.jtiRevocado("jti-1", exp);
+		emisor.usuarioDeshabilitado("d");
+
+		assertEquals(2, emisor.getDescartados());
+		emisor.enviar();
+
+		assertEquals(1, lotes.size());
+		assertEquals(Arrays.asList("JTI_REVOCADO null " + exp, "USUARIO_DESHABILITADO d 0", "INTENTOS a 1"),
+				describir(lotes.get(0)));
+		verify(tokensRevocados).aplicarJti("jti-1", exp);
+		verify(intentosLoginTracker).aplicarBloqueo("d");
+	}
+
+	@Test
+	void unLoteConOtroSecretoSeRechaza() throws InterruptedException {
+		ClusterInvalidaciones ajeno = emisor("otro-secreto");
+		try {
+			ajeno.jtiRevocado("jti-2", System.currentTimeMillis() / 1000 + 3600);
+			ajeno.enviar();
+		} finally {
+			ajeno.detener();
+		}
+
+		assertTrue(lotes.isEmpty());
+		assertEquals(1, ajeno.getFallidos());
+	}
+
+	/**
+	 * Entrega el lote a ClusterController como lo haría el DispatcherServlet y responde su status
+	 */
+	private void recibir(HttpExchange exchange) throws IOException {
+		List<MensajeCluster> mensajes;
+		try (InputStream entrada = exchange.getRequestBody()) {
+			mensajes = mapper.readValue(entrada, new TypeReference<List<MensajeCluster>>() {
+			});
+		}
+		int status = controller.recibir(exchange.getRequestHeaders().getFirst(ClusterInvalidaciones.HEADER_SECRETO),
+				exchange.getRequestHeaders().getFirst(ClusterInvalidaciones.HEADER_NODO), mensajes).getStatusCodeValue();
+		if (status < 300) {
+			lotes.add(mensajes);
+		}
+		exchange.sendResponseHeaders(status, -1);
+		exchange.close();
+	}
+
+	private static List<String> describir(List<MensajeCluster> lote) {
+		return lote.stream()
+				.map(mensaje -> mensaje.getTipo() + " " + mensaje.getUsername() + " " + mensaje.getValor())
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,95 @@
+package com.springboot.oauth.event;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnilloEventosTest {
+
+	@Test
+	void rechazaEventosCuandoEstaLlenoYLiberaAlDrenar() {
+		AnilloEventos anillo = new AnilloEventos(3);
+		assertEquals(4, anillo.getCapacidad());
+
+		for (int i = 0; i < 4; i++) {
+			assertTrue(anillo.publicar(EventoAutenticacion.INTENTO_FALLIDO, "juan", null, i + 1));
+		}
+		assertFalse(anillo.publicar(EventoAutenticacion.INTENTO_FALLIDO, "juan", null, 5));
+
+		List<Integer> numeros = new ArrayList<>();
+		assertEquals(2, anillo.drenar((evento, momento, username, detalle, numero) -> numeros.add(numero), 2));
+		assertTrue(anillo.publicar(EventoAutenticacion.USUARIO_BLOQUEADO, "juan", null, 5));
+		anillo.drenar((evento, momento, username, detalle, numero) -> numeros.add(numero), 10);
+
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), numeros);
+		assertEquals(0, anillo.pendientes());
+	}
+
+	@Test
+	void variosProductoresNoPierdenNiDesordenanEventos() throws Exception {
+		int productores = 4;
+		int eventosPorProductor = 50000;
+		AnilloEventos anillo = new AnilloEventos(1024);
+		CountDownLatch iniciar = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(productores);
+		try {
+			List<Future<?>> tareas = new ArrayList<>();
+			for (int p = 0; p < productores; p++) {
+				String username = "usuario" + p;
+				tareas.add(executor.submit(() -> {
+					iniciar.await();
+					for (int i = 1; i <= eventosPorProductor; i++) {
+						while (!anillo.publicar(EventoAutenticacion.LOGIN_EXITOSO, username, null, i)) {
+							Thread.yield();
+						}
+					}
+					return null;
+				}));
+			}
+			iniciar.countDown();
+
+			Map<String, Integer> ultimos = new HashMap<>();
+			int[] recibidos = {0};
+			while (recibidos[0] < productores * eventosPorProductor) {
+				anillo.drenar((evento, momento, username, detalle, numero) -> {
+					Integer anterior = ultimos.put(username, numero);
+					assertEquals(anterior == null ? 1 : anterior + 1, numero);
+					recibidos[0]++;
+				}, 256);
+			}
+			for (Future<?> tarea : tareas) {
+				tarea.get();
+			}
+			assertEquals(productores, ultimos.size());
+			ultimos.values().forEach(ultimo -> assertEquals(eventosPorProductor, ultimo));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void alDetenerElConsumidorEscribeLosEventosPendientes() throws Exception {
+		// espera larga para que el consumidor esté dormido cuando se detiene la auditoría
+		AuditoriaAutenticacion auditoria = new AuditoriaAutenticacion(64, AuditoriaAutenticacion.Politica.DESCARTAR, 4, 10_000);
+		auditoria.iniciar();
+		Thread.sleep(100);
+		for (int i = 0; i < 10; i++) {
+			auditoria.publicar(EventoAutenticacion.INTENTO_FALLIDO, "juan", i + 1);
+		}
+
+		auditoria.detener();
+
+		assertEquals(0, auditoria.getPendientes());
+		assertEquals(0, auditoria.getDescartados());
+	}
+}
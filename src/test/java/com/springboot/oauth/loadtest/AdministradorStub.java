@@ -0,0 +1,219 @@
+package com.springboot.oauth.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reemplazo del microservicio-administrador dentro del mismo proceso para las pruebas de carga,
+ * atiende los dos endPoints que utiliza UsuarioFeignClient:
+ *
+ * GET /administrador/search/buscar-username?username=usuarioN
+ * PUT /administrador/{id}
+ *
+ * Existen los usuarios usuario0 .. usuario(N-1) con el password 12345 y ROLE_ADMIN, cualquier
+ * otro username responde 404. Cada respuesta espera latenciaMs y una fracción tasaError de
+ * las peticiones responde 500 para simular un microservicio-administrador lento o inestable
+ */
+public class AdministradorStub {
+
+    static final String PASSWORD = "12345";
+
+    private static final String PREFIJO = "usuario";
+
+    private static final String BUSCAR = "/administrador/search/buscar-username";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final int usuarios;
+
+    private final long latenciaMs;
+
+    private final double tasaError;
+
+    private final String passwordEncriptado;
+
+    private final AtomicLong busquedas = new AtomicLong();
+
+    private final AtomicLong actualizaciones = new AtomicLong();
+
+    private final AtomicLong errores = new AtomicLong();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    public AdministradorStub(int usuarios, long latenciaMs, double tasaError, int costoBCrypt) {
+        this.usuarios = usuarios;
+        this.latenciaMs = latenciaMs;
+        this.tasaError = tasaError;
+        this.passwordEncriptado = new BCryptPasswordEncoder(costoBCrypt).encode(PASSWORD);
+    }
+
+    public static String username(int indice) {
+        return PREFIJO + indice;
+    }
+
+    public int iniciar() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "administrador-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/administrador", this::atender);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public void detener() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> estadisticas() {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("busquedas", busquedas.get());
+        resultado.put("actualizaciones", actualizaciones.get());
+        resultado.put("errores", errores.get());
+        return resultado;
+    }
+
+    private void atender(HttpExchange exchange) throws IOException {
+        try {
+            String metodo = exchange.getRequestMethod();
+            String ruta = exchange.getRequestURI().getPath();
+            if ("GET".equals(metodo) && BUSCAR.equals(ruta)) {
+                busquedas.incrementAndGet();
+                esperar();
+                if (!fallar(exchange)) {
+                    buscar(exchange, parametro(exchange.getRequestURI().getRawQuery(), "username"));
+                }
+            } else if ("PUT".equals(metodo) && ruta.matches("/administrador/\\d+")) {
+                actualizaciones.incrementAndGet();
+                byte[] cuerpo = leer(exchange.getRequestBody());
+                esperar();
+                if (!fallar(exchange)) {
+                    responder(exchange, 200, cuerpo);
+                }
+            } else {
+                responder(exchange, 404, new byte[0]);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void buscar(HttpExchange exchange, String username) throws IOException {
+        int indice = indice(username);
+        if (indice < 0 || indice >= usuarios) {
+            responder(exchange, 404, new byte[0]);
+            return;
+        }
+        Map<String, Object> role = new LinkedHashMap<>();
+        role.put("id", 1);
+        role.put("nombre", "ROLE_ADMIN");
+        List<Object> roles = new ArrayList<>(Collections.singletonList(role));
+
+        Map<String, Object> usuario = new LinkedHashMap<>();
+        usuario.put("id", indice + 1);
+        usuario.put("username", username);
+        usuario.put("password", passwordEncriptado);
+        usuario.put("enabled", true);
+        usuario.put("nombre", "Usuario");
+        usuario.put("apellido", String.valueOf(indice));
+        usuario.put("email", username + "@carga.local");
+        usuario.put("intentos", 0);
+        usuario.put("roles", roles);
+        responder(exchange, 200, mapper.writeValueAsBytes(usuario));
+    }
+
+    private static int indice(String username) {
+        if (username == null || !username.startsWith(PREFIJO)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(username.substring(PREFIJO.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean fallar(HttpExchange exchange) throws IOException {
+        if (tasaError > 0 && ThreadLocalRandom.current().nextDouble() < tasaError) {
+            errores.incrementAndGet();
+            responder(exchange, 500, new byte[0]);
+            return true;
+        }
+        return false;
+    }
+
+    private void esperar() {
+        if (latenciaMs > 0) {
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void responder(HttpExchange exchange, int status, byte[] cuerpo) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, cuerpo.length == 0 ? -1 : cuerpo.length);
+        if (cuerpo.length > 0) {
+            try (OutputStream salida = exchange.getResponseBody()) {
+                salida.write(cuerpo);
+            }
+        }
+    }
+
+    private static String parametro(String query, String nombre) throws IOException {
+        if (query == null) {
+            return null;
+        }
+        for (String par : query.split("&")) {
+            int igual = par.indexOf('=');
+            if (igual > 0 && par.substring(0, igual).equals(nombre)) {
+                return URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8.name());
+            }
+        }
+        return null;
+    }
+
+    static byte[] leer(InputStream entrada) throws IOException {
+        if (entrada == null) {
+            return new byte[0];
+        }
+        try (InputStream in = entrada) {
+            ByteArrayOutputStream salida = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int leidos;
+            while ((leidos = in.read(buffer)) != -1) {
+                salida.write(buffer, 0, leidos);
+            }
+            return salida.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.springboot.oauth.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.oauth.MicroservicioOauthApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueba de arranque en frío, levanta AdministradorStub y el microservicio-oauth en una JVM
+ * nueva por cada repetición con los perfiles indicados y mide el tiempo desde que se inicia
+ * el proceso hasta que /oauth/token entrega el primer token (grant password), que es el tiempo
+ * en que una instancia nueva empieza a atender logins al escalar.
+ *
+ * Después del primer token se lee la memoria residente (VmRSS de /proc/{pid}/status, solo en
+ * Linux) del proceso, el pid se obtiene con ApplicationPidFileWriter.
+ *
+ * Al terminar imprime en formato JSON cada corrida y el mínimo, la mediana y el máximo, y las
+ * guarda en arranque.resultado, se ejecuta con el perfil arranque de Maven:
+ *
+ * mvn -Parranque test -Darranque.perfiles=loadtest,lean
+ *
+ * arranque.repeticiones = número de arranques que se miden
+ * arranque.perfiles = perfiles de spring del microservicio-oauth, loadtest siempre es necesario
+ * arranque.jvm-args = argumentos de la JVM del microservicio-oauth separados por espacios
+ * arranque.timeout-segundos = tiempo máximo de espera del primer token
+ * arranque.bcrypt.costo = costo de BCrypt del password del stub y de security.bcrypt.costo
+ * arranque.resultado = archivo donde se guarda el resultado, los logs de cada arranque se
+ * guardan en el mismo directorio
+ */
+public class PruebaArranque {
+
+    private static final String CLIENTE = "frontendapp";
+
+    private static final String SECRETO = "12345";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final int repeticiones = Integer.getInteger("arranque.repeticiones", 3);
+
+    private final String perfiles = System.getProperty("arranque.perfiles", "loadtest,lean");
+
+    private final String jvmArgs = System.getProperty("arranque.jvm-args", "").trim();
+
+    private final long timeoutSegundos = Long.getLong("arranque.timeout-segundos", 120);
+
+    private final int costoBCrypt = Integer.getInteger("arranque.bcrypt.costo", 10);
+
+    private final String resultado = System.getProperty("arranque.resultado", "target/arranque-result.json");
+
+    private final String autorizacionCliente = "Basic " + Base64.getEncoder()
+            .encodeToString((CLIENTE + ":" + SECRETO).getBytes(StandardCharsets.UTF_8));
+
+    public static void main(String[] args) throws Exception {
+        new PruebaArranque().ejecutar();
+        System.exit(0);
+    }
+
+    private void ejecutar() throws Exception {
+        File archivo = new File(resultado).getAbsoluteFile();
+        File directorio = archivo.getParentFile();
+        directorio.mkdirs();
+
+        AdministradorStub stub = new AdministradorStub(1, 0, 0, costoBCrypt);
+        int puertoStub = stub.iniciar();
+        List<Map<String, Object>> corridas = new ArrayList<>();
+        try {
+            for (int i = 1; i <= repeticiones; i++) {
+                Map<String, Object> corrida = arrancar(i, puertoStub, directorio);
+                System.out.println("Arranque " + i + ": " + corrida);
+                corridas.add(corrida);
+            }
+        } finally {
+            stub.detener();
+        }
+
+        Map<String, Object> configuracion = new LinkedHashMap<>();
+        configuracion.put("repeticiones", repeticiones);
+        configuracion.put("perfiles", perfiles);
+        configuracion.put("jvmArgs", jvmArgs);
+        configuracion.put("costoBCrypt", costoBCrypt);
+        configuracion.put("java", System.getProperty("java.version"));
+
+        Map<String, Object> reporte = new LinkedHashMap<>();
+        reporte.put("configuracion", configuracion);
+        reporte.put("primerTokenMs", resumen(corridas, "primerTokenMs"));
+        reporte.put("rssMb", resumen(corridas, "rssMb"));
+        reporte.put("corridas", corridas);
+        String json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(reporte);
+        System.out.println(json);
+        mapper.writerWithDefaultPrettyPrinter().writeValue(archivo, reporte);
+    }
+
+    private Map<String, Object> arrancar(int numero, int puertoStub, File directorio) throws Exception {
+        int puerto = puertoLibre();
+        Path pidArchivo = Files.createTempFile("microservicio-oauth", ".pid");
+        Files.delete(pidArchivo);
+
+        List<String> comando = new ArrayList<>();
+        comando.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (!jvmArgs.isEmpty()) {
+            comando.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+        }
+        comando.add("-cp");
+        comando.add(System.getProperty("java.class.path"));
+        comando.add(MicroservicioOauthApplication.class.getName());
+        comando.add("--spring.profiles.active=" + perfiles);
+        comando.add("--server.port=" + puerto);
+        comando.add("--security.bcrypt.costo=" + costoBCrypt);
+        comando.add("--spring.cloud.discovery.client.simple.instances.microservicio-administrador[0].uri=http://127.0.0.1:" + puertoStub);
+        comando.add("--auditoria.archivo=" + new File(directorio, "arranque-auditoria.log"));
+        comando.add("--context.listener.classes=org.springframework.boot.context.ApplicationPidFileWriter");
+        comando.add("--spring.pid.file=" + pidArchivo);
+
+        File log = new File(directorio, "arranque-" + numero + ".log");
+        long inicio = System.nanoTime();
+        Process proceso = new ProcessBuilder(comando)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        try {
+            long limite = inicio + TimeUnit.SECONDS.toNanos(timeoutSegundos);
+            String formulario = "grant_type=password&username=" + codificar(AdministradorStub.username(0))
+                    + "&password=" + codificar(AdministradorStub.PASSWORD);
+            while (post("http://127.0.0.1:" + puerto + "/oauth/token", formulario) != 200) {
+                if (!proceso.isAlive()) {
+                    throw new IllegalStateException("El microservicio-oauth terminó al iniciar, ver " + log);
+                }
+                if (System.nanoTime() > limite) {
+                    throw new IllegalStateException("No se obtuvo el primer token en " + timeoutSegundos + " s, ver " + log);
+                }
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+            long primerToken = System.nanoTime() - inicio;
+
+            Map<String, Object> corrida = new LinkedHashMap<>();
+            corrida.put("primerTokenMs", TimeUnit.NANOSECONDS.toMillis(primerToken));
+            corrida.put("rssMb", rssMb(pidArchivo));
+            return corrida;
+        } finally {
+            proceso.destroy();
+            if (!proceso.waitFor(30, TimeUnit.SECONDS)) {
+                proceso.destroyForcibly();
+            }
+            Files.deleteIfExists(pidArchivo);
+        }
+    }
+
+    /**
+     * VmRSS del proceso en MB o -1 si no se puede leer
+     */
+    private static double rssMb(Path pidArchivo) throws IOException {
+        if (!Files.exists(pidArchivo)) {
+            return -1;
+        }
+        String pid = new String(Files.readAllBytes(pidArchivo), StandardCharsets.UTF_8).trim();
+        Path status = Paths.get("/proc", pid, "status");
+        if (!Files.exists(status)) {
+            return -1;
+        }
+        for (String linea : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+            if (linea.startsWith("VmRSS:")) {
+                long kb = Long.parseLong(linea.substring("VmRSS:".length()).replace("kB", "").trim());
+                return Math.round(kb / 1024d * 10d) / 10d;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<String, Object> resumen(List<Map<String, Object>> corridas, String medida) {
+        double[] valores = corridas.stream()
+                .mapToDouble(corrida -> ((Number) corrida.get(medida)).doubleValue())
+                .sorted()
+                .toArray();
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        if (valores.length == 0) {
+            return resumen;
+        }
+        resumen.put("minimo", valores[0]);
+        resumen.put("mediana", valores[valores.length / 2]);
+        resumen.put("maximo", valores[valores.length - 1]);
+        return resumen;
+    }
+
+    private int post(String url, String formulario) {
+        try {
+            HttpURLConnection conexion = (HttpURLConnection) new URL(url).openConnection();
+            conexion.setRequestMethod("POST");
+            conexion.setDoOutput(true);
+            conexion.setConnectTimeout(1000);
+            conexion.setReadTimeout(30000);
+            conexion.setRequestProperty("Authorization", autorizacionCliente);
+            conexion.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            try (OutputStream salida = conexion.getOutputStream()) {
+                salida.write(formulario.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = conexion.getResponseCode();
+            AdministradorStub.leer(status < 400 ? conexion.getInputStream() : conexion.getErrorStream());
+            return status;
+        } catch (IOException e) {
+            // el puerto todavía no acepta conexiones
+            return -1;
+        }
+    }
+
+    private static int puertoLibre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String codificar(String valor) throws IOException {
+        return URLEncoder.encode(valor, StandardCharsets.UTF_8.name());
+    }
+}
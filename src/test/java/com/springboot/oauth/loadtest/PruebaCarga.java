@@ -0,0 +1,375 @@
+package com.springboot.oauth.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.oauth.MicroservicioOauthApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueba de carga de punta a punta en una sola máquina, levanta AdministradorStub y el
+ * microservicio-oauth con el perfil loadtest (sin Eureka, el microservicio-administrador se
+ * resuelve con discovery estático hacia el stub) y ejecuta grant password, grant refresh_token
+ * y /oauth/check_token con la concurrencia indicada.
+ *
+ * Al terminar imprime en formato JSON el throughput y las latencias p50, p99 y p999 por
+ * operación y las guarda en carga.resultado, se ejecuta con el perfil carga de Maven:
+ *
+ * mvn -Pcarga test -Dcarga.concurrencia=64 -Dcarga.stub.latencia-ms=20
+ *
+ * carga.concurrencia = número de hilos que envían peticiones
+ * carga.calentamiento-segundos = tiempo inicial que no se toma en cuenta en el resultado
+ * carga.duracion-segundos = tiempo que se mide
+ * carga.mezcla = proporción de cada operación, por ejemplo password:1,refresh:1,check_token:8
+ * carga.usuarios = número de usuarios distintos del stub
+ * carga.stub.latencia-ms = latencia de cada respuesta del stub
+ * carga.stub.tasa-error = fracción de respuestas 500 del stub (0.0 - 1.0)
+ * carga.bcrypt.costo = costo de BCrypt de los passwords del stub y de security.bcrypt.costo
+ * carga.resultado = archivo donde se guarda el resultado
+ */
+public class PruebaCarga {
+
+    private static final String CLIENTE = "frontendapp";
+
+    private static final String SECRETO = "12345";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final int concurrencia = Integer.getInteger("carga.concurrencia", 32);
+
+    private final long calentamientoSegundos = Long.getLong("carga.calentamiento-segundos", 10);
+
+    private final long duracionSegundos = Long.getLong("carga.duracion-segundos", 30);
+
+    private final String mezcla = System.getProperty("carga.mezcla", "password:1,refresh:1,check_token:8");
+
+    private final int usuarios = Integer.getInteger("carga.usuarios", 100);
+
+    private final long latenciaMs = Long.getLong("carga.stub.latencia-ms", 5);
+
+    private final double tasaError = Double.parseDouble(System.getProperty("carga.stub.tasa-error", "0"));
+
+    private final int costoBCrypt = Integer.getInteger("carga.bcrypt.costo", 10);
+
+    private final String resultado = System.getProperty("carga.resultado", "target/carga-result.json");
+
+    private final String autorizacionCliente = "Basic " + Base64.getEncoder()
+            .encodeToString((CLIENTE + ":" + SECRETO).getBytes(StandardCharsets.UTF_8));
+
+    private String baseUrl;
+
+    private volatile boolean midiendo;
+
+    private volatile boolean terminado;
+
+    public static void main(String[] args) throws Exception {
+        new PruebaCarga().ejecutar();
+        System.exit(0);
+    }
+
+    private void ejecutar() throws Exception {
+        // HttpURLConnection solo mantiene 5 conexiones keep-alive por host por defecto
+        System.setProperty("http.maxConnections", String.valueOf(concurrencia));
+        Operacion[] operaciones = operaciones(mezcla);
+
+        AdministradorStub stub = new AdministradorStub(usuarios, latenciaMs, tasaError, costoBCrypt);
+        int puertoStub = stub.iniciar();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(MicroservicioOauthApplication.class)
+                .profiles("loadtest")
+                .run("--server.port=0",
+                        "--security.bcrypt.costo=" + costoBCrypt,
+                        "--spring.cloud.discovery.client.simple.instances.microservicio-administrador[0].uri=http://127.0.0.1:" + puertoStub);
+        try {
+            baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+
+            List<Trabajador> trabajadores = new ArrayList<>();
+            for (int i = 0; i < concurrencia; i++) {
+                trabajadores.add(new Trabajador(AdministradorStub.username(i % usuarios), operaciones));
+            }
+            for (Trabajador trabajador : trabajadores) {
+                trabajador.preparar();
+            }
+
+            CountDownLatch terminaron = new CountDownLatch(concurrencia);
+            for (int i = 0; i < concurrencia; i++) {
+                Trabajador trabajador = trabajadores.get(i);
+                Thread thread = new Thread(() -> {
+                    try {
+                        trabajador.run();
+                    } finally {
+                        terminaron.countDown();
+                    }
+                }, "carga-" + i);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            TimeUnit.SECONDS.sleep(calentamientoSegundos);
+            midiendo = true;
+            long inicio = System.nanoTime();
+            TimeUnit.SECONDS.sleep(duracionSegundos);
+            midiendo = false;
+            long transcurrido = System.nanoTime() - inicio;
+            terminado = true;
+            terminaron.await(30, TimeUnit.SECONDS);
+
+            Map<String, Object> reporte = reporte(trabajadores, transcurrido, stub);
+            String json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(reporte);
+            System.out.println(json);
+            File archivo = new File(resultado);
+            if (archivo.getParentFile() != null) {
+                archivo.getParentFile().mkdirs();
+            }
+            mapper.writerWithDefaultPrettyPrinter().writeValue(archivo, reporte);
+        } finally {
+            context.close();
+            stub.detener();
+        }
+    }
+
+    private Map<String, Object> reporte(List<Trabajador> trabajadores, long transcurridoNanos, AdministradorStub stub) {
+        double segundos = transcurridoNanos / 1_000_000_000d;
+        Map<String, Object> configuracion = new LinkedHashMap<>();
+        configuracion.put("concurrencia", concurrencia);
+        configuracion.put("calentamientoSegundos", calentamientoSegundos);
+        configuracion.put("duracionSegundos", duracionSegundos);
+        configuracion.put("mezcla", mezcla);
+        configuracion.put("usuarios", usuarios);
+        configuracion.put("latenciaStubMs", latenciaMs);
+        configuracion.put("tasaErrorStub", tasaError);
+        configuracion.put("costoBCrypt", costoBCrypt);
+
+        Map<String, Object> porOperacion = new LinkedHashMap<>();
+        Latencias total = new Latencias();
+        for (Operacion operacion : Operacion.values()) {
+            Latencias latencias = new Latencias();
+            for (Trabajador trabajador : trabajadores) {
+                latencias.agregar(trabajador.latencias.get(operacion));
+            }
+            if (latencias.cantidad + latencias.errores > 0) {
+                porOperacion.put(operacion.nombre, latencias.resumen(segundos));
+                total.agregar(latencias);
+            }
+        }
+        Map<String, Object> reporte = new LinkedHashMap<>();
+        reporte.put("configuracion", configuracion);
+        reporte.put("operaciones", porOperacion);
+        reporte.put("total", total.resumen(segundos));
+        reporte.put("administradorStub", stub.estadisticas());
+        return reporte;
+    }
+
+    private static Operacion[] operaciones(String mezcla) {
+        List<Operacion> operaciones = new ArrayList<>();
+        for (String parte : mezcla.split(",")) {
+            String[] nombrePeso = parte.trim().split(":");
+            Operacion operacion = Operacion.buscar(nombrePeso[0].trim());
+            int peso = nombrePeso.length > 1 ? Integer.parseInt(nombrePeso[1].trim()) : 1;
+            for (int i = 0; i < peso; i++) {
+                operaciones.add(operacion);
+            }
+        }
+        if (operaciones.isEmpty()) {
+            throw new IllegalArgumentException("carga.mezcla no tiene operaciones: " + mezcla);
+        }
+        return operaciones.toArray(new Operacion[0]);
+    }
+
+    private enum Operacion {
+        PASSWORD("password"), REFRESH("refresh"), CHECK_TOKEN("check_token");
+
+        private final String nombre;
+
+        Operacion(String nombre) {
+            this.nombre = nombre;
+        }
+
+        private static Operacion buscar(String nombre) {
+            for (Operacion operacion : values()) {
+                if (operacion.nombre.equals(nombre)) {
+                    return operacion;
+                }
+            }
+            throw new IllegalArgumentException("Operación desconocida en carga.mezcla: " + nombre + ", se esperaba "
+                    + Arrays.toString(values()));
+        }
+    }
+
+    /**
+     * Cada hilo trabaja con un usuario y sus tokens, el refresh token se puede reutilizar
+     * por que DefaultTokenServices no lo reemplaza en cada grant refresh_token
+     */
+    private final class Trabajador implements Runnable {
+
+        private final String username;
+
+        private final Operacion[] operaciones;
+
+        private final Map<Operacion, Latencias> latencias = new EnumMap<>(Operacion.class);
+
+        private String accessToken;
+
+        private String refreshToken;
+
+        private Trabajador(String username, Operacion[] operaciones) {
+            this.username = username;
+            this.operaciones = operaciones;
+            for (Operacion operacion : Operacion.values()) {
+                latencias.put(operacion, new Latencias());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void preparar() throws IOException {
+            for (int intento = 0; intento < 20; intento++) {
+                Respuesta respuesta = post("/oauth/token", "grant_type=password&username=" + codificar(username)
+                        + "&password=" + codificar(AdministradorStub.PASSWORD));
+                if (respuesta.status == 200) {
+                    Map<String, Object> tokens = mapper.readValue(respuesta.cuerpo, Map.class);
+                    accessToken = (String) tokens.get("access_token");
+                    refreshToken = (String) tokens.get("refresh_token");
+                    return;
+                }
+            }
+            throw new IllegalStateException("No se pudo obtener el token inicial de " + username);
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!terminado) {
+                Operacion operacion = operaciones[random.nextInt(operaciones.length)];
+                long inicio = System.nanoTime();
+                boolean correcta;
+                try {
+                    correcta = ejecutar(operacion).status == 200;
+                } catch (IOException e) {
+                    correcta = false;
+                }
+                long duracion = System.nanoTime() - inicio;
+                if (midiendo) {
+                    latencias.get(operacion).registrar(duracion, correcta);
+                }
+            }
+        }
+
+        private Respuesta ejecutar(Operacion operacion) throws IOException {
+            switch (operacion) {
+                case PASSWORD:
+                    return post("/oauth/token", "grant_type=password&username=" + codificar(username)
+                            + "&password=" + codificar(AdministradorStub.PASSWORD));
+                case REFRESH:
+                    return post("/oauth/token", "grant_type=refresh_token&refresh_token=" + codificar(refreshToken));
+                default:
+                    return post("/oauth/check_token", "token=" + codificar(accessToken));
+            }
+        }
+    }
+
+    private Respuesta post(String ruta, String formulario) throws IOException {
+        HttpURLConnection conexion = (HttpURLConnection) new URL(baseUrl + ruta).openConnection();
+        conexion.setRequestMethod("POST");
+        conexion.setDoOutput(true);
+        conexion.setConnectTimeout(5000);
+        conexion.setReadTimeout(30000);
+        conexion.setRequestProperty("Authorization", autorizacionCliente);
+        conexion.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        byte[] cuerpo = formulario.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream salida = conexion.getOutputStream()) {
+            salida.write(cuerpo);
+        }
+        int status = conexion.getResponseCode();
+        // Se lee la respuesta completa para que la conexión regrese al pool de keep-alive
+        byte[] respuesta = AdministradorStub.leer(status < 400 ? conexion.getInputStream() : conexion.getErrorStream());
+        return new Respuesta(status, respuesta);
+    }
+
+    private static String codificar(String valor) throws IOException {
+        return URLEncoder.encode(valor, StandardCharsets.UTF_8.name());
+    }
+
+    private static final class Respuesta {
+        private final int status;
+        private final byte[] cuerpo;
+
+        private Respuesta(int status, byte[] cuerpo) {
+            this.status = status;
+            this.cuerpo = cuerpo;
+        }
+    }
+
+    /**
+     * Latencias en nanosegundos de las peticiones correctas, cada hilo tiene las suyas
+     * y se combinan al final para no sincronizar durante la prueba
+     */
+    private static final class Latencias {
+
+        private long[] valores = new long[1024];
+
+        private int cantidad;
+
+        private long errores;
+
+        private void registrar(long nanos, boolean correcta) {
+            if (!correcta) {
+                errores++;
+                return;
+            }
+            if (cantidad == valores.length) {
+                valores = Arrays.copyOf(valores, valores.length * 2);
+            }
+            valores[cantidad++] = nanos;
+        }
+
+        private void agregar(Latencias otras) {
+            if (cantidad + otras.cantidad > valores.length) {
+                valores = Arrays.copyOf(valores, Math.max(valores.length * 2, cantidad + otras.cantidad));
+            }
+            System.arraycopy(otras.valores, 0, valores, cantidad, otras.cantidad);
+            cantidad += otras.cantidad;
+            errores += otras.errores;
+        }
+
+        private Map<String, Object> resumen(double segundos) {
+            long[] ordenados = Arrays.copyOf(valores, cantidad);
+            Arrays.sort(ordenados);
+            Map<String, Object> resumen = new LinkedHashMap<>();
+            resumen.put("peticiones", cantidad);
+            resumen.put("errores", errores);
+            resumen.put("throughputPorSegundo", redondear(cantidad / segundos));
+            resumen.put("p50Ms", percentil(ordenados, 0.50));
+            resumen.put("p99Ms", percentil(ordenados, 0.99));
+            resumen.put("p999Ms", percentil(ordenados, 0.999));
+            resumen.put("maximoMs", ordenados.length == 0 ? 0 : redondear(ordenados[ordenados.length - 1] / 1_000_000d));
+            return resumen;
+        }
+
+        private static double percentil(long[] ordenados, double percentil) {
+            if (ordenados.length == 0) {
+                return 0;
+            }
+            int indice = (int) Math.ceil(percentil * ordenados.length) - 1;
+            return redondear(ordenados[Math.max(0, indice)] / 1_000_000d);
+        }
+
+        private static double redondear(double valor) {
+            return Math.round(valor * 1000d) / 1000d;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.springboot.oauth.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtEncoderRapidoTest {
+
+	private static final String LLAVE = Base64.getEncoder().encodeToString("frontendapp".getBytes());
+
+	private static final Date EXPIRACION = new Date(System.currentTimeMillis() + 3600_000L);
+
+	private final JsonParser parser = JsonParserFactory.create();
+
+	@Test
+	void generaLosMismosClaimsQueElEncoderOriginal() {
+		JwtAccessTokenConverter original = new JwtAccessTokenConverter();
+		original.setSigningKey(LLAVE);
+		JwtKidAccessTokenConverter rapido = converter(new LlavesJwtProperties());
+
+		OAuth2AccessToken esperado = original.enhance(token(), autenticacion());
+		OAuth2AccessToken obtenido = rapido.enhance(token(), autenticacion());
+
+		String[] partes = obtenido.getValue().split("\\.");
+		assertEquals(esperado.getValue().split("\\.")[0], partes[0]);
+		MacSigner verificador = new MacSigner(LLAVE);
+		assertEquals(claims(esperado.getValue(), verificador), claims(obtenido.getValue(), verificador));
+	}
+
+	@Test
+	void firmaConLaLlaveRsaActivaYSuKid() throws Exception {
+		KeyPairGenerator generador = KeyPairGenerator.getInstance("RSA");
+		generador.initialize(2048);
+		KeyPair par = generador.generateKeyPair();
+		LlavesJwtProperties.Llave llave = new LlavesJwtProperties.Llave();
+		llave.setKid("k1");
+		llave.setPrivateKey(Base64.getEncoder().encodeToString(par.getPrivate().getEncoded()));
+		LlavesJwtProperties properties = new LlavesJwtProperties();
+		properties.setLlaves(Collections.singletonList(llave));
+		JwtKidAccessTokenConverter rapido = converter(properties);
+
+		OAuth2AccessToken obtenido = rapido.enhance(token(), autenticacion());
+
+		assertEquals("k1", JwtHelper.headers(obtenido.getValue()).get("kid"));
+		Map<String, Object> claims = claims(obtenido.getValue(), new RsaVerifier((RSAPublicKey) par.getPublic()));
+		assertEquals("juan", claims.get("user_name"));
+		assertEquals(Arrays.asList("read", "write"), claims.get("scope"));
+		assertEquals("Peña \"Ñandú\" 😀", claims.get("apellido"));
+	}
+
+	private JwtKidAccessTokenConverter converter(LlavesJwtProperties properties) {
+		JwtKidAccessTokenConverter converter = new JwtKidAccessTokenConverter(new LlavesJwt(properties), true,
+				new TokenVerificadoCache(100, 300));
+		converter.setEncoderRapido(new JwtEncoderRapido());
+		converter.setSigningKey(LLAVE);
+		return converter;
+	}
+
+	private Map<String, Object> claims(String token, SignatureVerifier verificador) {
+		return parser.parseMap(JwtHelper.decodeAndVerify(token, verificador).getClaims());
+	}
+
+	private static DefaultOAuth2AccessToken token() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("valor");
+		token.setScope(new HashSet<>(Arrays.asList("read", "write")));
+		token.setExpiration(EXPIRACION);
+		Map<String, Object> info = new LinkedHashMap<>();
+		info.put("nombre", "Juan");
+		info.put("apellido", "Peña \"Ñandú\" 😀");
+		info.put("email", "juan@correo.com\n");
+		token.setAdditionalInformation(info);
+		return token;
+	}
+
+	private static OAuth2Authentication autenticacion() {
+		Map<String, String> parametros = new HashMap<>();
+		parametros.put("grant_type", "password");
+		OAuth2Request request = new OAuth2Request(parametros, "frontendapp", null, true,
+				new HashSet<>(Arrays.asList("read", "write")), null, null, null, null);
+		UsernamePasswordAuthenticationToken usuario = new UsernamePasswordAuthenticationToken("juan", null,
+				AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER", "ROLE_ADMIN"));
+		return new OAuth2Authentication(request, usuario);
+	}
+}
@@ -0,0 +1,45 @@
+package com.springboot.oauth.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitadorTasaTest {
+
+	private static final long SEGUNDO = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void permiteLaRafagaYDespuesUnaPeticionPorIntervalo() {
+		LimitadorTasa limitador = new LimitadorTasa(100, 600);
+		LimitadorTasa.Tasa tasa = LimitadorTasa.Tasa.de(new LimitesTasaProperties.Limite(60, 3));
+		long ahora = 1000 * SEGUNDO;
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limitador.intentar("juan", tasa, ahora));
+		}
+		assertEquals(SEGUNDO, limitador.intentar("juan", tasa, ahora));
+		assertEquals(SEGUNDO / 2, limitador.intentar("juan", tasa, ahora + SEGUNDO / 2));
+
+		assertEquals(0, limitador.intentar("juan", tasa, ahora + SEGUNDO));
+		assertTrue(limitador.intentar("juan", tasa, ahora + SEGUNDO) > 0);
+		assertEquals(0, limitador.intentar("pedro", tasa, ahora));
+	}
+
+	@Test
+	void recuperaLaRafagaCompletaDespuesDeEsperar() {
+		LimitadorTasa limitador = new LimitadorTasa(100, 600);
+		LimitadorTasa.Tasa tasa = LimitadorTasa.Tasa.de(new LimitesTasaProperties.Limite(60, 3));
+		long ahora = 1000 * SEGUNDO;
+		for (int i = 0; i < 3; i++) {
+			limitador.intentar("juan", tasa, ahora);
+		}
+
+		long despues = ahora + 10 * SEGUNDO;
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limitador.intentar("juan", tasa, despues));
+		}
+		assertTrue(limitador.intentar("juan", tasa, despues) > 0);
+	}
+}
@@ -0,0 +1,65 @@
+package com.springboot.oauth.security;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlavesJwtTest {
+
+	private static KeyPair par;
+
+	@BeforeAll
+	static void generar() throws Exception {
+		KeyPairGenerator generador = KeyPairGenerator.getInstance("RSA");
+		generador.initialize(2048);
+		par = generador.generateKeyPair();
+	}
+
+	@Test
+	void firmaConLaLlaveMasRecienteVigente() {
+		LlavesJwtProperties properties = new LlavesJwtProperties();
+		properties.setLlaves(Arrays.asList(privada("k1", "2020-01-01T00:00:00Z"), privada("k2", "2021-01-01T00:00:00Z")));
+
+		assertEquals("k2", new LlavesJwt(properties).activa().getKid());
+	}
+
+	@Test
+	void noIniciaSiLaUnicaLlavePrivadaYaSeRetiro() {
+		LlavesJwtProperties.Llave publica = new LlavesJwtProperties.Llave();
+		publica.setKid("k2");
+		publica.setPublicKey(Base64.getEncoder().encodeToString(par.getPublic().getEncoded()));
+		publica.setActivaDesde("2021-01-01T00:00:00Z");
+		LlavesJwtProperties properties = new LlavesJwtProperties();
+		properties.setLlaves(Arrays.asList(privada("k1", "2020-01-01T00:00:00Z"), publica));
+		properties.setSolapamientoSegundos(60);
+
+		assertThrows(IllegalStateException.class, () -> new LlavesJwt(properties));
+	}
+
+	@Test
+	void hmacSoloSeAceptaPorDefectoSinLlavesRsa() {
+		LlavesJwtProperties properties = new LlavesJwtProperties();
+		assertTrue(properties.isAceptarHmac());
+
+		properties.setLlaves(Collections.singletonList(privada("k1", "2020-01-01T00:00:00Z")));
+		assertFalse(properties.isAceptarHmac());
+
+		properties.setAceptarHmac(true);
+		assertTrue(properties.isAceptarHmac());
+	}
+
+	private static LlavesJwtProperties.Llave privada(String kid, String activaDesde) {
+		LlavesJwtProperties.Llave llave = new LlavesJwtProperties.Llave();
+		llave.setKid(kid);
+		llave.setPrivateKey(Base64.getEncoder().encodeToString(par.getPrivate().getEncoded()));
+		llave.setActivaDesde(activaDesde);
+		return llave;
+	}
+}
@@ -0,0 +1,105 @@
+package com.springboot.oauth.service;
+
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import com.springboot.oauth.metrics.MetricasOauth;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * El tiempo de vida de los contadores avanza con el reloj de la prueba y las escrituras
+ * programadas no se ejecutan, la prueba las realiza con escribirPendientes
+ */
+class IntentosLoginTrackerTest {
+
+	private final AtomicLong reloj = new AtomicLong();
+
+	private IntentosLoginTracker tracker;
+
+	@BeforeEach
+	void iniciar() {
+		tracker = crear(3600);
+	}
+
+	private IntentosLoginTracker crear(long ttlSegundos) {
+		IntentosLoginTracker tracker = new IntentosLoginTracker(ttlSegundos, 1000, reloj::get, mock(ScheduledExecutorService.class));
+		ReflectionTestUtils.setField(tracker, "usuarioService", mock(IUsuarioService.class));
+		ReflectionTestUtils.setField(tracker, "usuarioCache", mock(UsuarioCache.class));
+		ReflectionTestUtils.setField(tracker, "usuariosModificados", mock(UsuariosModificados.class));
+		ReflectionTestUtils.setField(tracker, "tokensRevocados", mock(TokensRevocados.class));
+		ReflectionTestUtils.setField(tracker, "metricas", mock(MetricasOauth.class));
+		ReflectionTestUtils.setField(tracker, "cluster", mock(ClusterInvalidaciones.class));
+		ReflectionTestUtils.setField(tracker, "maximo", 3);
+		ReflectionTestUtils.setField(tracker, "escrituraMs", 0L);
+		return tracker;
+	}
+
+	@Test
+	void unUsuarioHabilitadoDeNuevoNoSeVuelveADeshabilitar() {
+		AdministradorEntity usuario = usuario(0, true);
+		for (int i = 0; i < 3; i++) {
+			tracker.registrarFallo(usuario);
+		}
+		assertTrue(tracker.estaBloqueado("juan"));
+		tracker.escribirPendientes();
+
+		// un administrador habilitó al usuario y reinició sus intentos en el microservicio-administrador
+		assertEquals(1, tracker.registrarFallo(usuario(0, true)));
+		assertFalse(tracker.estaBloqueado("juan"));
+	}
+
+	@Test
+	void intentosReiniciadosEnElAdministradorReinicianElContador() {
+		AdministradorEntity usuario = usuario(0, true);
+		tracker.registrarFallo(usuario);
+		tracker.registrarFallo(usuario);
+		tracker.escribirPendientes();
+
+		assertEquals(1, tracker.registrarFallo(usuario(0, true)));
+	}
+
+	@Test
+	void olvidarDescartaElContador() {
+		AdministradorEntity usuario = usuario(0, true);
+		tracker.registrarFallo(usuario);
+		tracker.registrarFallo(usuario);
+		tracker.escribirPendientes();
+
+		tracker.olvidar("juan");
+		assertEquals(2, tracker.registrarFallo(usuario(1, true)));
+	}
+
+	@Test
+	void losContadoresDelClusterVencen() {
+		tracker = crear(1);
+		tracker.aplicarBloqueo("juan");
+		avanzar(700);
+		// cada mensaje del cluster renueva el tiempo de vida
+		tracker.aplicarIntentos("juan", 1);
+		avanzar(700);
+		assertTrue(tracker.estaBloqueado("juan"));
+		avanzar(700);
+		assertFalse(tracker.estaBloqueado("juan"));
+	}
+
+	private void avanzar(long ms) {
+		reloj.addAndGet(TimeUnit.MILLISECONDS.toNanos(ms));
+	}
+
+	private static AdministradorEntity usuario(int intentos, boolean enabled) {
+		AdministradorEntity usuario = new AdministradorEntity();
+		usuario.setId(1);
+		usuario.setUsername("juan");
+		usuario.setIntentos(intentos);
+		usuario.setEnabled(enabled);
+		return usuario;
+	}
+}
@@ -0,0 +1,124 @@
+package com.springboot.oauth.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+	@Test
+	void busquedasConcurrentesCompartenUnaLlamada() throws Exception {
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		AtomicInteger llamadas = new AtomicInteger();
+		CountDownLatch liberar = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> resultados = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				resultados.add(executor.submit(() -> singleFlight.ejecutar("admin", () -> {
+					llamadas.incrementAndGet();
+					try {
+						liberar.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return "resultado";
+				})));
+			}
+			while (singleFlight.llamadasEnVuelo() == 0) {
+				Thread.yield();
+			}
+			Thread.sleep(100);
+			liberar.countDown();
+			for (Future<String> resultado : resultados) {
+				assertEquals("resultado", resultado.get(5, TimeUnit.SECONDS));
+			}
+			assertTrue(llamadas.get() < 8);
+			assertEquals(0, singleFlight.llamadasEnVuelo());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void laExcepcionSePropagaSinEnvolver() {
+		SingleFlight<String, String> singleFlight = new SingleFlight<>();
+		IllegalStateException error = assertThrows(IllegalStateException.class,
+				() -> singleFlight.ejecutar("admin", () -> {
+					throw new IllegalStateException("sin conexion");
+				}));
+		assertEquals("sin conexion", error.getMessage());
+		assertEquals(0, singleFlight.llamadasEnVuelo());
+	}
+
+	@Test
+	void escriturasColapsadasEscribenElUltimoValor() {
+		EscrituraColapsada<Integer, String, String> escrituras = new EscrituraColapsada<>();
+		assertEquals("v1", escrituras.escribir(1, "v1", valor -> valor));
+		assertEquals("v2", escrituras.escribir(1, "v2", valor -> valor));
+	}
+
+	@Test
+	void escriturasEnEsperaSeColapsanEnUnaConElUltimoValor() throws Exception {
+		EscrituraColapsada<Integer, String, String> escrituras = new EscrituraColapsada<>();
+		List<String> escritos = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch escribiendo = new CountDownLatch(1);
+		CountDownLatch liberar = new CountDownLatch(1);
+		int esperando = 8;
+		AtomicReferenceArray<String> resultados = new AtomicReferenceArray<>(esperando + 1);
+
+		Thread primera = new Thread(() -> resultados.set(0, escrituras.escribir(1, "v0", valor -> {
+			escritos.add(valor);
+			escribiendo.countDown();
+			try {
+				liberar.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return valor;
+		})));
+		primera.start();
+		assertTrue(escribiendo.await(5, TimeUnit.SECONDS));
+
+		// cada hilo deja su valor y se espera a que quede bloqueado en el resultado para que
+		// el orden de los valores pendientes sea el de los hilos
+		List<Thread> hilos = new ArrayList<>();
+		for (int i = 1; i <= esperando; i++) {
+			int numero = i;
+			Thread hilo = new Thread(() -> resultados.set(numero, escrituras.escribir(1, "v" + numero, valor -> {
+				escritos.add(valor);
+				return valor;
+			})));
+			hilo.start();
+			while (hilo.getState() != Thread.State.WAITING) {
+				assertTrue(hilo.isAlive());
+				Thread.yield();
+			}
+			hilos.add(hilo);
+		}
+
+		liberar.countDown();
+		primera.join(5000);
+		for (Thread hilo : hilos) {
+			hilo.join(5000);
+		}
+
+		assertEquals(Arrays.asList("v0", "v" + esperando), escritos);
+		assertEquals("v0", resultados.get(0));
+		for (int i = 1; i <= esperando; i++) {
+			assertEquals("v" + esperando, resultados.get(i));
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.springboot.oauth.service;
+
+import com.springboot.oauth.cluster.ClusterInvalidaciones;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class TokensRevocadosTest {
+
+	@TempDir
+	Path directorio;
+
+	@Test
+	void lasRevocacionesSeRestauranDelSnapshot() throws Exception {
+		Path archivo = directorio.resolve("revocaciones.bin");
+		long exp = ahora() + 3600;
+		TokensRevocados original = crear(archivo, true);
+		original.revocarToken(claims("jti-1", "juan", exp));
+		original.revocarUsuario("ana");
+		original.guardar();
+		original.detener();
+
+		TokensRevocados restaurado = crear(archivo, true);
+		try {
+			assertEquals(1, restaurado.getJtiRevocados());
+			assertEquals(1, restaurado.getUsuariosRevocados());
+			assertEquals("jti", restaurado.revocado(claims("jti-1", "juan", exp)));
+			assertEquals("usuario", restaurado.revocado(claims("jti-2", "ana", exp)));
+		} finally {
+			restaurado.detener();
+		}
+	}
+
+	@Test
+	void lasRevocacionesVencidasNoSeRestauran() throws Exception {
+		Path archivo = directorio.resolve("revocaciones.bin");
+		long ahora = ahora();
+		// snapshot escrito antes de que vencieran jti-viejo y pedro
+		try (DataOutputStream salida = new DataOutputStream(Files.newOutputStream(archivo))) {
+			salida.writeInt(1);
+			escribir(salida, 1, "jti-vigente", ahora + 3600, ahora + 3600);
+			escribir(salida, 1, "jti-viejo", ahora - 10, ahora - 10);
+			escribir(salida, 2, "pedro", ahora - 7200, ahora - 3600);
+			salida.writeByte(0);
+		}
+
+		TokensRevocados restaurado = crear(archivo, true);
+		try {
+			assertEquals(1, restaurado.getJtiRevocados());
+			assertEquals(0, restaurado.getUsuariosRevocados());
+			assertEquals("jti", restaurado.revocado(claims("jti-vigente", "juan", ahora + 3600)));
+		} finally {
+			restaurado.detener();
+		}
+	}
+
+	@Test
+	void sinSnapshotNoSeEscribeArchivo() throws Exception {
+		Path archivo = directorio.resolve("revocaciones.bin");
+		TokensRevocados tokensRevocados = crear(archivo, false);
+		tokensRevocados.revocarUsuario("juan");
+		tokensRevocados.detener();
+
+		assertFalse(Files.exists(archivo));
+	}
+
+	private static TokensRevocados crear(Path archivo, boolean snapshot) {
+		TokensRevocados tokensRevocados = new TokensRevocados(1000, 60, snapshot, archivo.toString());
+		ReflectionTestUtils.setField(tokensRevocados, "cluster", mock(ClusterInvalidaciones.class));
+		tokensRevocados.iniciar();
+		return tokensRevocados;
+	}
+
+	private static void escribir(DataOutputStream salida, int tipo, String llave, long valor, long expiraEn) throws Exception {
+		salida.writeByte(tipo);
+		salida.writeUTF(llave);
+		salida.writeLong(valor);
+		salida.writeLong(expiraEn);
+	}
+
+	private static Map<String, Object> claims(String jti, String username, long exp) {
+		Map<String, Object> claims = new HashMap<>();
+		claims.put("jti", jti);
+		claims.put("user_name", username);
+		claims.put("exp", exp);
+		return claims;
+	}
+
+	private static long ahora() {
+		return System.currentTimeMillis() / 1000L;
+	}
+}
@@ -0,0 +1,88 @@
+package com.springboot.oauth.service;
+
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsuarioCacheTest {
+
+	private final UsuarioCache cache = new UsuarioCache(100, 300, 900);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private final CountDownLatch cargando = new CountDownLatch(1);
+
+	private final CountDownLatch liberar = new CountDownLatch(1);
+
+	@AfterEach
+	void detener() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void unUpdateDuranteLaCargaNoSeReemplazaConElUsuarioAnterior() throws Exception {
+		Future<AdministradorEntity> carga = cargarEnEspera(usuario(0, true));
+
+		AdministradorEntity deshabilitado = usuario(3, false);
+		cache.guardar(deshabilitado);
+		liberar.countDown();
+		carga.get(5, TimeUnit.SECONDS);
+
+		assertSame(deshabilitado, cache.getCache().getIfPresent("juan"));
+		assertSame(deshabilitado, cache.ultimoConocido("juan"));
+	}
+
+	@Test
+	void unaInvalidacionDuranteLaCargaNoGuardaElUsuarioAnterior() throws Exception {
+		Future<AdministradorEntity> carga = cargarEnEspera(usuario(0, true));
+
+		cache.invalidar("juan");
+		liberar.countDown();
+		carga.get(5, TimeUnit.SECONDS);
+
+		assertNull(cache.getCache().getIfPresent("juan"));
+		assertNull(cache.ultimoConocido("juan"));
+	}
+
+	@Test
+	void unaCargaSinCambiosSeGuarda() {
+		AdministradorEntity usuario = usuario(0, true);
+
+		assertSame(usuario, cache.obtener("juan", username -> usuario));
+		assertSame(usuario, cache.getCache().getIfPresent("juan"));
+	}
+
+	/**
+	 * Inicia la carga remota del usuario y regresa cuando la llamada ya está en curso,
+	 * la llamada termina al liberar el latch
+	 */
+	private Future<AdministradorEntity> cargarEnEspera(AdministradorEntity remoto) throws InterruptedException {
+		Future<AdministradorEntity> carga = executor.submit(() -> cache.obtener("juan", username -> {
+			cargando.countDown();
+			try {
+				liberar.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return remoto;
+		}));
+		assertTrue(cargando.await(5, TimeUnit.SECONDS));
+		return carga;
+	}
+
+	private static AdministradorEntity usuario(int intentos, boolean enabled) {
+		AdministradorEntity usuario = new AdministradorEntity();
+		usuario.setUsername("juan");
+		usuario.setIntentos(intentos);
+		usuario.setEnabled(enabled);
+		return usuario;
+	}
+}
@@ -0,0 +1,131 @@
+package com.springboot.oauth.service;
+
+import com.springboot.commons.usuarios.entity.AdministradorEntity;
+import com.springboot.oauth.client.CircuitoAdministradorConfig;
+import com.springboot.oauth.metrics.MetricasOauth;
+import com.springboot.oauth.security.ServicioSaturadoException;
+import feign.FeignException;
+import feign.Request;
+import feign.Response;
+import feign.RetryableException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.circuitbreaker.CircuitBreaker;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Respuesta de findByUsername para cada falla del microservicio-administrador, con y sin
+ * el último valor conocido del usuario
+ */
+class UsuarioServiceTest {
+
+	private static final Request REQUEST = Request.create(Request.HttpMethod.GET, "/usuarios/juan",
+			Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+
+	private final UsuarioService service = new UsuarioService();
+
+	private final UsuarioCache usuarioCache = new UsuarioCache(100, 300, 900);
+
+	private final UsuariosInexistentesCache usuariosInexistentes = mock(UsuariosInexistentesCache.class);
+
+	private final CircuitBreaker circuito = mock(CircuitBreaker.class);
+
+	@BeforeEach
+	void iniciar() {
+		CircuitoAdministradorConfig circuitoConfig = mock(CircuitoAdministradorConfig.class);
+		when(circuitoConfig.getAbiertoSegundos()).thenReturn(10L);
+		ReflectionTestUtils.setField(service, "usuarioSnapshot", new UsuarioSnapshot());
+		ReflectionTestUtils.setField(service, "usuarioCache", usuarioCache);
+		ReflectionTestUtils.setField(service, "usuariosInexistentes", usuariosInexistentes);
+		ReflectionTestUtils.setField(service, "metricas", mock(MetricasOauth.class));
+		ReflectionTestUtils.setField(service, "circuitoConfig", circuitoConfig);
+		ReflectionTestUtils.setField(service, "circuito", circuito);
+	}
+
+	@Test
+	void sinUltimoValorConocidoLasFallasSeRespondenComoSaturacion() {
+		RuntimeException[] fallas = {
+				CallNotPermittedException.createCallNotPermittedException(
+						io.github.resilience4j.circuitbreaker.CircuitBreaker.ofDefaults("prueba")),
+				new RejectedExecutionException("pool lleno"),
+				new ServicioSaturadoException(10),
+				new RetryableException(-1, "Connection refused", Request.HttpMethod.GET, null, REQUEST),
+				feign(503),
+				feign(500)
+		};
+		for (RuntimeException falla : fallas) {
+			fallar(falla);
+			ServicioSaturadoException e = assertThrows(ServicioSaturadoException.class,
+					() -> service.findByUsername("juan"), falla.getClass().getName());
+			assertEquals(10, e.getRetryAfterSegundos());
+		}
+		verify(usuariosInexistentes, never()).registrar(any());
+	}
+
+	@Test
+	void conUltimoValorConocidoSeUtilizaElUsuario() {
+		AdministradorEntity usuario = usuario();
+		usuarioCache.guardar(usuario);
+		RuntimeException[] fallas = {
+				new RejectedExecutionException("pool lleno"),
+				new ServicioSaturadoException(10),
+				feign(503)
+		};
+		for (RuntimeException falla : fallas) {
+			// solo se desaloja el tier principal, el último valor conocido se conserva
+			usuarioCache.getCache().invalidate("juan");
+			fallar(falla);
+			assertSame(usuario, service.findByUsername("juan"));
+		}
+	}
+
+	@Test
+	void unUsuarioNoEncontradoSeRecuerdaComoInexistente() {
+		fallar(feign(404));
+
+		assertThrows(FeignException.NotFound.class, () -> service.findByUsername("juan"));
+		verify(usuariosInexistentes).registrar("juan");
+	}
+
+	@Test
+	void unErrorInternoNoSeOcultaComoSaturacion() {
+		fallar(new IllegalStateException("error"));
+
+		assertThrows(IllegalStateException.class, () -> service.findByUsername("juan"));
+	}
+
+	/**
+	 * El circuit breaker entrega la falla a su fallback como lo hace Resilience4JCircuitBreaker
+	 */
+	@SuppressWarnings("unchecked")
+	private void fallar(RuntimeException falla) {
+		doAnswer(invocacion -> ((Function<Throwable, Object>) invocacion.getArgument(1)).apply(falla))
+				.when(circuito).run(any(), any());
+	}
+
+	private static FeignException feign(int status) {
+		return FeignException.errorStatus("findByUsername", Response.builder()
+				.status(status)
+				.reason("error")
+				.request(REQUEST)
+				.headers(Collections.emptyMap())
+				.build());
+	}
+
+	private static AdministradorEntity usuario() {
+		AdministradorEntity usuario = new AdministradorEntity();
+		usuario.setUsername("juan");
+		usuario.setEnabled(true);
+		return usuario;
+	}
+}